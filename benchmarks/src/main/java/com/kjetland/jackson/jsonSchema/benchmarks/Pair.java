@@ -0,0 +1,9 @@
+package com.kjetland.jackson.jsonSchema.benchmarks;
+
+// Used to create large numbers of different types (and definitions) using generics
+public class Pair<A, B> {
+
+    public A left;
+
+    public B right;
+}
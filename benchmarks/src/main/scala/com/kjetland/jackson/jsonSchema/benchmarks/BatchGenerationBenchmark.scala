@@ -0,0 +1,39 @@
+package com.kjetland.jackson.jsonSchema.benchmarks
+
+import java.util.concurrent.{ForkJoinPool, TimeUnit}
+
+import com.fasterxml.jackson.databind.{JavaType, JsonNode, ObjectMapper}
+import com.kjetland.jackson.jsonSchema.JsonSchemaGenerator
+import com.kjetland.jackson.jsonSchema.testData._
+import com.kjetland.jackson.jsonSchema.testData.generic.GenericClassContainer
+import com.kjetland.jackson.jsonSchema.testData.polymorphism1.{Child1, Parent}
+import com.kjetland.jackson.jsonSchema.testData_issue_24.EntityWrapper
+import org.openjdk.jmh.annotations._
+
+import scala.collection.immutable.ListMap
+
+// Compares generating the schemas one by one with generating them in one batch, sequentially and in parallel.
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput, Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class BatchGenerationBenchmark {
+
+  val objectMapper = new ObjectMapper()
+  val jsonSchemaGenerator = new JsonSchemaGenerator(objectMapper)
+
+  val javaTypes:List[JavaType] = List(classOf[PojoWithParent], classOf[PojoWithArrays], classOf[RecursivePojo], classOf[PojoUsingMaps],
+    classOf[Parent], classOf[Child1], classOf[EntityWrapper], classOf[GenericClassContainer], classOf[BoringContainer],
+    classOf[ManyPrimitives], classOf[PojoUsingValidation]).map(objectMapper.constructType(_))
+
+  @Benchmark
+  def oneByOne():List[JsonNode] = javaTypes.map(jsonSchemaGenerator.generateJsonSchema(_))
+
+  @Benchmark
+  def batch():ListMap[JavaType, JsonNode] = jsonSchemaGenerator.generateJsonSchemas(javaTypes)
+
+  @Benchmark
+  def parallelBatch():ListMap[JavaType, JsonNode] = jsonSchemaGenerator.generateJsonSchemas(javaTypes, ForkJoinPool.commonPool())
+}
@@ -0,0 +1,53 @@
+package com.kjetland.jackson.jsonSchema.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.fasterxml.jackson.databind.{JavaType, ObjectMapper}
+import com.kjetland.jackson.jsonSchema.{JsonSchemaBundle, JsonSchemaGenerator}
+import org.openjdk.jmh.annotations._
+
+// Generates one bundle with definitionCount definitions, using Pair[A, B] with different type-arguments
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.SingleShotTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+class DefinitionsScalingBenchmark {
+
+  @Param(Array("1000", "10000", "50000"))
+  var definitionCount:Int = _
+
+  var jsonSchemaGenerator:JsonSchemaGenerator = _
+  var javaTypes:List[JavaType] = _
+
+  @Setup
+  def setup():Unit = {
+    val objectMapper = new ObjectMapper()
+    jsonSchemaGenerator = new JsonSchemaGenerator(objectMapper)
+
+    val typeFactory = objectMapper.getTypeFactory
+    val leafTypes = List(classOf[String], classOf[Integer], classOf[java.lang.Long], classOf[java.lang.Short], classOf[java.lang.Byte],
+      classOf[java.lang.Double], classOf[java.lang.Float], classOf[java.lang.Boolean], classOf[java.lang.Character],
+      classOf[java.math.BigDecimal], classOf[java.math.BigInteger], classOf[java.util.UUID], classOf[java.net.URI],
+      classOf[java.net.URL], classOf[java.util.Locale]).map(typeFactory.constructType(_))
+
+    def pair(a:JavaType, b:JavaType):JavaType = typeFactory.constructParametricType(classOf[Pair[_, _]], a, b)
+
+    // All combinations (ignoring order) of size leaf-types, as lists of indexes into leafTypes
+    def combinations(size:Int, from:Int):Iterator[List[Int]] = {
+      if (size == 0) Iterator(List()) else (from until leafTypes.size).iterator.flatMap(i => combinations(size - 1, i).map(i :: _))
+    }
+
+    // Pair[Pair[Pair[A, B], C], D] etc. Since JavaType.hashCode() is the sum of the hashCodes of the types it is made of,
+    // each combination is only used once to make sure all the types get different hashCodes.
+    // There are more than 50000 combinations of 2 to 6 leaf-types. Each type is a new definition, referencing the one
+    // created before it (Pair[Pair[A, B], C] references Pair[A, B])
+    javaTypes = (2 to 6).iterator.flatMap(combinations(_, 0)).map {
+      indexes => indexes.tail.foldLeft(leafTypes(indexes.head))((t, i) => pair(t, leafTypes(i)))
+    }.take(definitionCount).toList
+  }
+
+  @Benchmark
+  def generateJsonSchemaBundle():JsonSchemaBundle = jsonSchemaGenerator.generateJsonSchemaBundle(javaTypes)
+}
@@ -0,0 +1,68 @@
+package com.kjetland.jackson.jsonSchema.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import com.fasterxml.jackson.databind.{JavaType, JsonNode, ObjectMapper}
+import com.kjetland.jackson.jsonSchema.testData._
+import com.kjetland.jackson.jsonSchema.testData.generic.GenericClassContainer
+import com.kjetland.jackson.jsonSchema.testData.polymorphism1.Parent
+import com.kjetland.jackson.jsonSchema.testData.polymorphism2.Parent2
+import com.kjetland.jackson.jsonSchema.testData.polymorphism3.Parent3
+import com.kjetland.jackson.jsonSchema.testData.polymorphism4.Child41
+import com.kjetland.jackson.jsonSchema.testData.polymorphism5.Parent5
+import com.kjetland.jackson.jsonSchema.testData.polymorphism6.Parent6
+import com.kjetland.jackson.jsonSchema.{JsonSchemaConfig, JsonSchemaGenerator}
+import org.openjdk.jmh.annotations._
+
+object GenerateJsonSchemaBenchmark {
+
+  val shapes:Map[String, Class[_]] = Map(
+    "ManyPrimitives"  -> classOf[ManyPrimitives],
+    "polymorphism1"   -> classOf[Parent],
+    "polymorphism2"   -> classOf[Parent2],
+    "polymorphism3"   -> classOf[Parent3],
+    "polymorphism4"   -> classOf[Child41],
+    "polymorphism5"   -> classOf[Parent5],
+    "polymorphism6"   -> classOf[Parent6],
+    "GenericClass"    -> classOf[GenericClassContainer],
+    "RecursivePojo"   -> classOf[RecursivePojo],
+    "PojoWithArrays"  -> classOf[PojoWithArrays]
+  )
+
+  val configs:Map[String, JsonSchemaConfig] = Map(
+    "vanillaJsonSchemaDraft4" -> JsonSchemaConfig.vanillaJsonSchemaDraft4,
+    "html5EnabledSchema"      -> JsonSchemaConfig.html5EnabledSchema
+  )
+}
+
+// Generating one schema from scratch for each of the shapes found in the test-data
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput, Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+class GenerateJsonSchemaBenchmark {
+
+  @Param(Array("ManyPrimitives", "polymorphism1", "polymorphism2", "polymorphism3", "polymorphism4", "polymorphism5",
+    "polymorphism6", "GenericClass", "RecursivePojo", "PojoWithArrays"))
+  var shape:String = _
+
+  @Param(Array("vanillaJsonSchemaDraft4", "html5EnabledSchema"))
+  var config:String = _
+
+  var jsonSchemaGenerator:JsonSchemaGenerator = _
+  var javaType:JavaType = _
+
+  @Setup
+  def setup():Unit = {
+    val objectMapper = new ObjectMapper()
+    jsonSchemaGenerator = new JsonSchemaGenerator(objectMapper, GenerateJsonSchemaBenchmark.configs(config))
+    javaType = objectMapper.constructType(GenerateJsonSchemaBenchmark.shapes(shape))
+    // Make sure the classpath-scanning used by some of the polymorphism-shapes is not measured
+    jsonSchemaGenerator.generateJsonSchema(javaType)
+  }
+
+  @Benchmark
+  def generateJsonSchema():JsonNode = jsonSchemaGenerator.generateJsonSchema(javaType)
+}
@@ -0,0 +1,96 @@
+package com.kjetland.jackson.jsonSchema.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Lists all classes annotated with @JsonSchemaPrecompile in the resource META-INF/mbknor-jackson-jsonSchema/precompile
+ * (one binary class-name on each line).
+ *
+ * The processor cannot generate the schemas itself, since the classes are not loadable while they are being compiled.
+ * PrecompiledJsonSchemaWriter generates the schemas for the listed classes after compilation, using JsonSchemaGenerator,
+ * so all the annotations supported by JsonSchemaGenerator (@JsonSchemaTitle, @JsonSchemaInject, ...) are honored.
+ */
+@SupportedAnnotationTypes(JsonSchemaPrecompileProcessor.annotationName)
+public class JsonSchemaPrecompileProcessor extends AbstractProcessor {
+
+    static final String annotationName = "com.kjetland.jackson.jsonSchema.annotations.JsonSchemaPrecompile";
+
+    // Must be the same as PrecompiledJsonSchemas.classListResourceName
+    static final String resourceName = "META-INF/mbknor-jackson-jsonSchema/precompile";
+
+    private final Set<String> classNames = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element instanceof TypeElement) {
+                    classNames.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+                }
+            }
+        }
+
+        if (roundEnv.processingOver() && !classNames.isEmpty()) {
+            writeClassList();
+        }
+        return false;
+    }
+
+    private void writeClassList() {
+        // When compiling incrementally, only some of the classes are processed - keep the ones already listed
+        classNames.addAll(readExistingClassList());
+
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", resourceName);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String className : classNames) {
+                    writer.write(className);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + resourceName + ": " + e);
+        }
+    }
+
+    private Set<String> readExistingClassList() {
+        Set<String> existing = new TreeSet<>();
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", resourceName);
+            try (Reader reader = new InputStreamReader(file.openInputStream(), StandardCharsets.UTF_8)) {
+                BufferedReader lines = new BufferedReader(reader);
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        existing.add(line.trim());
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // No existing list
+        }
+        return existing;
+    }
+}
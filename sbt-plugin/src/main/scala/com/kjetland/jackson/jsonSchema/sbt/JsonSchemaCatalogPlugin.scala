@@ -0,0 +1,58 @@
+package com.kjetland.jackson.jsonSchema.sbt
+
+import sbt.Keys._
+import sbt._
+import sbt.plugins.JvmPlugin
+
+/**
+  * Generates a JsonSchemaCatalog at build-time and packages it into the jar, so the schemas can be served using
+  * JsonSchemaCatalog.load() without generating them at runtime.
+  *
+  * The project must depend on mbknor-jackson-jsonSchema, since JsonSchemaCatalogWriter is run using the project's classpath.
+  */
+object JsonSchemaCatalogPlugin extends AutoPlugin {
+
+  override def trigger = noTrigger
+  override def requires = JvmPlugin
+
+  object autoImport {
+    val jsonSchemaClasses = settingKey[Seq[String]]("Classes to generate schemas for")
+    val jsonSchemaPackages = settingKey[Seq[String]]("Packages to generate schemas for - all public classes in them are included")
+    val jsonSchemaConfig = settingKey[String]("The JsonSchemaConfig-preset to use, e.g. vanillaJsonSchemaDraft4, html5EnabledSchema or nullableJsonSchemaDraft4")
+    val jsonSchemaObjectMapperFactory = settingKey[Option[String]]("A java.util.function.Supplier[ObjectMapper] creating the ObjectMapper to use - default is a plain ObjectMapper with the Scala-module")
+    val jsonSchemaCatalog = taskKey[Seq[File]]("Generates the schema-catalog")
+  }
+
+  import autoImport._
+
+  private val writerClassName = "com.kjetland.jackson.jsonSchema.JsonSchemaCatalogWriter"
+
+  override def projectSettings: Seq[Setting[_]] = Seq(
+    jsonSchemaClasses := Seq(),
+    jsonSchemaPackages := Seq(),
+    jsonSchemaConfig := "vanillaJsonSchemaDraft4",
+    jsonSchemaObjectMapperFactory := None,
+    jsonSchemaCatalog := {
+      val _ = (Compile / compile).value
+      // Directly in resourceManaged, since the resources are packaged relative to it
+      val dir = (Compile / resourceManaged).value
+      val catalogDir = dir / "META-INF" / "mbknor-jackson-jsonSchema" / "catalog"
+      val classpath = (Compile / classDirectory).value +: (Compile / dependencyClasspath).value.files
+      val classes = jsonSchemaClasses.value
+      val packages = jsonSchemaPackages.value
+      val args = Seq(dir.getPath, "--config", jsonSchemaConfig.value) ++
+        jsonSchemaObjectMapperFactory.value.toSeq.flatMap(f => Seq("--object-mapper", f)) ++
+        packages.flatMap(p => Seq("--package", p)) ++ classes
+      val run = (Compile / runner).value
+      val log = streams.value.log
+
+      // Schemas for removed classes must not be packaged
+      IO.delete(catalogDir)
+      if (classes.nonEmpty || packages.nonEmpty) {
+        run.run(writerClassName, classpath, args, log).get
+      }
+      (catalogDir ** "*").filter(_.isFile).get
+    },
+    Compile / resourceGenerators += jsonSchemaCatalog.taskValue
+  )
+}
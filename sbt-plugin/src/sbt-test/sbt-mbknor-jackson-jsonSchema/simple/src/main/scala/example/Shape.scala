@@ -0,0 +1,7 @@
+package example
+
+import com.fasterxml.jackson.annotation.{JsonSubTypes, JsonTypeInfo}
+
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
+@JsonSubTypes(Array(new JsonSubTypes.Type(value = classOf[example.dto.Circle], name = "circle")))
+trait Shape
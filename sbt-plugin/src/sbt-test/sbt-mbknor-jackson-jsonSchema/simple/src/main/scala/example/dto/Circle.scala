@@ -0,0 +1,5 @@
+package example.dto
+
+import example.Shape
+
+case class Circle(radius:Double) extends Shape
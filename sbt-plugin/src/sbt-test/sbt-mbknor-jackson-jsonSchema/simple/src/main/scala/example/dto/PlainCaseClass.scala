@@ -0,0 +1,4 @@
+package example.dto
+
+// Without @BeanProperty - only found using the Scala-module
+case class PlainCaseClass(label:String, size:Int)
@@ -0,0 +1,15 @@
+package example.dto
+
+import scala.beans.BeanProperty
+
+case class Pojo(@BeanProperty name:String, @BeanProperty count:Int)
+
+// The companion-object is not included
+object Pojo {
+  val empty = Pojo("", 0)
+}
+
+// Abstract - not included
+abstract class AbstractPojo {
+  def name:String
+}
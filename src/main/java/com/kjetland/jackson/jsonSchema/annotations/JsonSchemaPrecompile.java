@@ -0,0 +1,18 @@
+package com.kjetland.jackson.jsonSchema.annotations;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks classes which schemas should be generated at build-time.
+ *
+ * The annotation-processor in mbknor-jackson-jsonSchema-processor lists them, PrecompiledJsonSchemaWriter generates
+ * their schemas, and PrecompiledJsonSchemas serves them at runtime.
+ */
+@Target({ TYPE })
+@Retention(RUNTIME)
+public @interface JsonSchemaPrecompile {
+}
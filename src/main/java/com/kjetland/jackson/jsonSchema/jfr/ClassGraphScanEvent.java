@@ -0,0 +1,26 @@
+package com.kjetland.jackson.jsonSchema.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The ClassGraph-scan done by SubclassesResolverImpl to build its SubtypeIndex. Spans the whole scan.
+ */
+@Name("com.kjetland.jackson.jsonSchema.ClassGraphScan")
+@Label("JSON Schema ClassGraph Scan")
+@Category({ "JSON Schema" })
+public class ClassGraphScanEvent extends jdk.jfr.Event {
+
+    @Label("Packages")
+    public String packages;
+
+    @Label("Classpath Elements")
+    public int classpathElements;
+
+    @Label("Classes")
+    public int classes;
+
+    @Label("Subtype Index Size")
+    public int subtypeIndexSize;
+}
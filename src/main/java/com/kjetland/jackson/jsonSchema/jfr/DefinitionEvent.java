@@ -0,0 +1,32 @@
+package com.kjetland.jackson.jsonSchema.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A definition has been built. Committed when it is finished, so the time spent is in buildTime.
+ */
+@Name("com.kjetland.jackson.jsonSchema.Definition")
+@Label("JSON Schema Definition")
+@Category({ "JSON Schema" })
+public class DefinitionEvent extends jdk.jfr.Event {
+
+    @Label("Type")
+    public String typeName;
+
+    @Label("Ref")
+    public String ref;
+
+    @Label("Build Time")
+    @Description("Including the definitions created while building it")
+    @Timespan
+    public long buildTime;
+
+    @Label("Self Time")
+    @Description("Excluding the definitions created while building it")
+    @Timespan
+    public long selfTime;
+}
@@ -0,0 +1,28 @@
+package com.kjetland.jackson.jsonSchema.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * @JsonSchemaInject has been applied. Committed when it is finished, so the time spent is in injectTime.
+ */
+@Name("com.kjetland.jackson.jsonSchema.Inject")
+@Label("JSON Schema Inject")
+@Category({ "JSON Schema" })
+public class InjectEvent extends jdk.jfr.Event {
+
+    @Label("Type")
+    public String typeName;
+
+    @Label("Merge")
+    public boolean merge;
+
+    @Label("JSON Supplier Lookup")
+    public String jsonSupplierViaLookup;
+
+    @Label("Inject Time")
+    @Timespan
+    public long injectTime;
+}
@@ -0,0 +1,28 @@
+package com.kjetland.jackson.jsonSchema.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Generating the schema (or bundle-entry) for a root-type. Spans the whole generation.
+ */
+@Name("com.kjetland.jackson.jsonSchema.SchemaGeneration")
+@Label("JSON Schema Generation")
+@Category({ "JSON Schema" })
+public class SchemaGenerationEvent extends jdk.jfr.Event {
+
+    @Label("Type")
+    public String typeName;
+
+    @Label("Definitions Created")
+    public int definitionsCreated;
+
+    @Label("Definitions Reused")
+    public int definitionsReused;
+
+    @Label("Node Count")
+    @Description("The number of json-nodes in the schema - without the definitions when they are streamed by writeJsonSchema")
+    public int nodeCount;
+}
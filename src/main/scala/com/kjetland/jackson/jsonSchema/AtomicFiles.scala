@@ -0,0 +1,28 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.io.{BufferedOutputStream, File, FileOutputStream, OutputStream}
+import java.nio.file.{Files, StandardCopyOption}
+
+/**
+  * Writes files by writing a temp-file in the same directory, which is moved in place when it is complete - so readers
+  * (e.g. other JVMs) never see a half-written file. The temp-file is deleted if writing it fails.
+  */
+private[jsonSchema] object AtomicFiles {
+
+  def write(file:File)(writeTo:OutputStream => Unit):Unit = {
+    val directory = file.getAbsoluteFile.getParentFile
+    directory.mkdirs()
+    val tmpFile = File.createTempFile(file.getName, ".tmp", directory)
+    try {
+      val out = new BufferedOutputStream(new FileOutputStream(tmpFile))
+      try {
+        writeTo(out)
+      } finally {
+        out.close()
+      }
+      Files.move(tmpFile.toPath, file.toPath, StandardCopyOption.REPLACE_EXISTING)
+    } finally {
+      Files.deleteIfExists(tmpFile.toPath)
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.util.concurrent.ConcurrentHashMap
+
+import com.fasterxml.jackson.databind.JavaType
+import com.fasterxml.jackson.databind.node.ObjectNode
+
+/**
+  * A finished definition as it was built by a previous generation.
+  *
+  * @param shortRef the name of the definition, e.g. "Address" or "Address_1"
+  * @param node the definition itself - Must never be modified
+  * @param references all types referenced directly from this definition (in the order they were visited)
+  *                   together with the $ref used for each of them
+  */
+case class DefinitionFragment(shortRef:String, node:ObjectNode, references:List[(JavaType, String)])
+
+/**
+  * Store of finished definitions shared between multiple generations.
+  *
+  * When a type has been built once, later generations can splice in the finished definition (and the definitions it
+  * references) instead of introspecting and building it all over again.
+  *
+  * Fragments are keyed by JavaType and JsonSchemaConfig. A store must only be used by JsonSchemaGenerators using the
+  * same ObjectMapper. Since fragments are reused as is, output from jsonSuppliers used in @JsonSchemaInject is only
+  * resolved the first time a definition is built. Use clear() if this output changes.
+  */
+class DefinitionFragmentStore {
+
+  private val fragments = new ConcurrentHashMap[(JsonSchemaConfig, TypeKey), DefinitionFragment]()
+
+  def get(config:JsonSchemaConfig, _type:JavaType):Option[DefinitionFragment] = Option(fragments.get((config, TypeKey(_type))))
+
+  def contains(config:JsonSchemaConfig, _type:JavaType):Boolean = fragments.containsKey((config, TypeKey(_type)))
+
+  def put(config:JsonSchemaConfig, _type:JavaType, fragment:DefinitionFragment):Unit = {
+    fragments.putIfAbsent((config, TypeKey(_type)), fragment)
+  }
+
+  def size:Int = fragments.size()
+
+  def clear():Unit = fragments.clear()
+}
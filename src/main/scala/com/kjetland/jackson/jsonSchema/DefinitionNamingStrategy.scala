@@ -0,0 +1,42 @@
+package com.kjetland.jackson.jsonSchema
+
+import com.fasterxml.jackson.annotation.JsonTypeName
+import com.fasterxml.jackson.databind.JavaType
+
+/**
+  * Decides the name of the definition used for a type, e.g. "Address" in "#/definitions/Address".
+  *
+  * The name is only computed once for each type. If multiple types get the same name, the generator makes them
+  * unique by appending _1, _2 etc.
+  */
+trait DefinitionNamingStrategy {
+  def getDefinitionName(_type:JavaType, config:JsonSchemaConfig):String
+}
+
+/**
+  * Uses the name from @JsonTypeName or the simple class-name (or the full class-name if
+  * config.useTypeIdForDefinitionName), followed by the names of any type-arguments, e.g. "GenericClass(String)".
+  */
+class DefaultDefinitionNamingStrategy extends DefinitionNamingStrategy {
+
+  def extractTypeName(_type:JavaType) : String = {
+    // use JsonTypeName annotation if present
+    val annotation = _type.getRawClass.getDeclaredAnnotation(classOf[JsonTypeName])
+    Option(annotation).flatMap( a => Option(a.value())).filter(_.nonEmpty)
+      .getOrElse( _type.getRawClass.getSimpleName )
+  }
+
+  override def getDefinitionName(_type:JavaType, config:JsonSchemaConfig) : String = {
+    val baseName = if (config.useTypeIdForDefinitionName) _type.getRawClass.getTypeName else extractTypeName(_type)
+
+    if (_type.hasGenericTypes) {
+      val containedTypes = Range(0, _type.containedTypeCount()).map(_type.containedType)
+      val typeNames = containedTypes.map(getDefinitionName(_, config)).mkString(",")
+      s"$baseName($typeNames)"
+    } else {
+      baseName
+    }
+  }
+}
+
+object DefaultDefinitionNamingStrategy extends DefaultDefinitionNamingStrategy
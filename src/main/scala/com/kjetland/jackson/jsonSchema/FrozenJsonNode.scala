@@ -0,0 +1,163 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.math.{BigInteger, BigDecimal => JBigDecimal}
+import java.util
+import java.util.{Collections, Map => JMap}
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.node.{ArrayNode, JsonNodeFactory, ObjectNode}
+import com.fasterxml.jackson.databind.util.RawValue
+
+/**
+  * Read-only JsonNodes which can safely be shared between multiple callers without copying them.
+  *
+  * Use freeze() to create a read-only version of a node, and thaw() to get a mutable copy of it.
+  * All methods modifying a frozen node throws UnsupportedOperationException.
+  */
+object FrozenJsonNode {
+
+  def freeze(node:JsonNode):JsonNode = {
+    node match {
+      case n:FrozenObjectNode => n
+      case n:FrozenArrayNode  => n
+      case n:ObjectNode       => freeze(n)
+      case n:ArrayNode        =>
+        val children = new util.ArrayList[JsonNode](n.size())
+        val it = n.elements()
+        while (it.hasNext) {
+          children.add(freeze(it.next()))
+        }
+        new FrozenArrayNode(children)
+      case n                  => n // All other nodes are values, which are immutable
+    }
+  }
+
+  def freeze(node:ObjectNode):ObjectNode = {
+    node match {
+      case n:FrozenObjectNode => n
+      case n                  =>
+        val children = new util.LinkedHashMap[String, JsonNode](n.size())
+        val it = n.fields()
+        while (it.hasNext) {
+          val e = it.next()
+          children.put(e.getKey, freeze(e.getValue))
+        }
+        new FrozenObjectNode(children)
+    }
+  }
+
+  // Returns a mutable copy of node
+  def thaw(node:JsonNode):JsonNode = node.deepCopy[JsonNode]()
+
+  def isFrozen(node:JsonNode):Boolean = {
+    node match {
+      case _:FrozenObjectNode => true
+      case _:FrozenArrayNode  => true
+      case _:ObjectNode       => false
+      case _:ArrayNode        => false
+      case _                  => true
+    }
+  }
+
+  private[jsonSchema] def readOnly():Nothing = throw new UnsupportedOperationException("This JsonNode is frozen - use FrozenJsonNode.thaw() to get a mutable copy")
+}
+
+import com.kjetland.jackson.jsonSchema.FrozenJsonNode.readOnly
+
+class FrozenObjectNode private[jsonSchema](children:JMap[String, JsonNode]) extends ObjectNode(JsonNodeFactory.instance, children) {
+
+  override def fields():util.Iterator[JMap.Entry[String, JsonNode]] = Collections.unmodifiableMap[String, JsonNode](_children).entrySet().iterator()
+  override def elements():util.Iterator[JsonNode] = Collections.unmodifiableCollection(_children.values()).iterator()
+  override def fieldNames():util.Iterator[String] = Collections.unmodifiableSet(_children.keySet()).iterator()
+
+  override def `with`(propertyName:String):ObjectNode = readOnly()
+  override def withArray(propertyName:String):ArrayNode = readOnly()
+  override def set[T <: JsonNode](fieldName:String, value:JsonNode):T = readOnly()
+  override def setAll[T <: JsonNode](properties:JMap[String, _ <: JsonNode]):T = readOnly()
+  override def setAll[T <: JsonNode](other:ObjectNode):T = readOnly()
+  override def replace(fieldName:String, value:JsonNode):JsonNode = readOnly()
+  override def without[T <: JsonNode](fieldName:String):T = readOnly()
+  override def without[T <: JsonNode](fieldNames:util.Collection[String]):T = readOnly()
+  override def put(fieldName:String, value:JsonNode):JsonNode = readOnly()
+  override def remove(fieldName:String):JsonNode = readOnly()
+  override def remove(fieldNames:util.Collection[String]):ObjectNode = readOnly()
+  override def removeAll():ObjectNode = readOnly()
+  override def putAll(properties:JMap[String, _ <: JsonNode]):JsonNode = readOnly()
+  override def putAll(other:ObjectNode):JsonNode = readOnly()
+  override def retain(fieldNames:util.Collection[String]):ObjectNode = readOnly()
+  override def retain(fieldNames:String*):ObjectNode = readOnly()
+  override def putArray(fieldName:String):ArrayNode = readOnly()
+  override def putObject(fieldName:String):ObjectNode = readOnly()
+  override def putPOJO(fieldName:String, pojo:Any):ObjectNode = readOnly()
+  override def putRawValue(fieldName:String, raw:RawValue):ObjectNode = readOnly()
+  override def putNull(fieldName:String):ObjectNode = readOnly()
+  override def put(fieldName:String, v:Short):ObjectNode = readOnly()
+  override def put(fieldName:String, v:java.lang.Short):ObjectNode = readOnly()
+  override def put(fieldName:String, v:Int):ObjectNode = readOnly()
+  override def put(fieldName:String, v:Integer):ObjectNode = readOnly()
+  override def put(fieldName:String, v:Long):ObjectNode = readOnly()
+  override def put(fieldName:String, v:java.lang.Long):ObjectNode = readOnly()
+  override def put(fieldName:String, v:Float):ObjectNode = readOnly()
+  override def put(fieldName:String, v:java.lang.Float):ObjectNode = readOnly()
+  override def put(fieldName:String, v:Double):ObjectNode = readOnly()
+  override def put(fieldName:String, v:java.lang.Double):ObjectNode = readOnly()
+  override def put(fieldName:String, v:JBigDecimal):ObjectNode = readOnly()
+  override def put(fieldName:String, v:BigInteger):ObjectNode = readOnly()
+  override def put(fieldName:String, v:String):ObjectNode = readOnly()
+  override def put(fieldName:String, v:Boolean):ObjectNode = readOnly()
+  override def put(fieldName:String, v:java.lang.Boolean):ObjectNode = readOnly()
+  override def put(fieldName:String, v:Array[Byte]):ObjectNode = readOnly()
+  override protected def _put(fieldName:String, value:JsonNode):ObjectNode = readOnly()
+}
+
+class FrozenArrayNode private[jsonSchema](children:util.List[JsonNode]) extends ArrayNode(JsonNodeFactory.instance, children) {
+
+  override def elements():util.Iterator[JsonNode] = Collections.unmodifiableList(children).iterator()
+
+  override def set(index:Int, value:JsonNode):JsonNode = readOnly()
+  override def add(value:JsonNode):ArrayNode = readOnly()
+  override def addAll(other:ArrayNode):ArrayNode = readOnly()
+  override def addAll(nodes:util.Collection[_ <: JsonNode]):ArrayNode = readOnly()
+  override def insert(index:Int, value:JsonNode):ArrayNode = readOnly()
+  override def remove(index:Int):JsonNode = readOnly()
+  override def removeAll():ArrayNode = readOnly()
+  override def addArray():ArrayNode = readOnly()
+  override def addObject():ObjectNode = readOnly()
+  override def addPOJO(value:Any):ArrayNode = readOnly()
+  override def addRawValue(raw:RawValue):ArrayNode = readOnly()
+  override def addNull():ArrayNode = readOnly()
+  override def add(v:Int):ArrayNode = readOnly()
+  override def add(v:Integer):ArrayNode = readOnly()
+  override def add(v:Long):ArrayNode = readOnly()
+  override def add(v:java.lang.Long):ArrayNode = readOnly()
+  override def add(v:Float):ArrayNode = readOnly()
+  override def add(v:java.lang.Float):ArrayNode = readOnly()
+  override def add(v:Double):ArrayNode = readOnly()
+  override def add(v:java.lang.Double):ArrayNode = readOnly()
+  override def add(v:JBigDecimal):ArrayNode = readOnly()
+  override def add(v:BigInteger):ArrayNode = readOnly()
+  override def add(v:String):ArrayNode = readOnly()
+  override def add(v:Boolean):ArrayNode = readOnly()
+  override def add(v:java.lang.Boolean):ArrayNode = readOnly()
+  override def add(v:Array[Byte]):ArrayNode = readOnly()
+  override def insertArray(index:Int):ArrayNode = readOnly()
+  override def insertObject(index:Int):ObjectNode = readOnly()
+  override def insertPOJO(index:Int, value:Any):ArrayNode = readOnly()
+  override def insertNull(index:Int):ArrayNode = readOnly()
+  override def insert(index:Int, v:Int):ArrayNode = readOnly()
+  override def insert(index:Int, v:Integer):ArrayNode = readOnly()
+  override def insert(index:Int, v:Long):ArrayNode = readOnly()
+  override def insert(index:Int, v:java.lang.Long):ArrayNode = readOnly()
+  override def insert(index:Int, v:Float):ArrayNode = readOnly()
+  override def insert(index:Int, v:java.lang.Float):ArrayNode = readOnly()
+  override def insert(index:Int, v:Double):ArrayNode = readOnly()
+  override def insert(index:Int, v:java.lang.Double):ArrayNode = readOnly()
+  override def insert(index:Int, v:JBigDecimal):ArrayNode = readOnly()
+  override def insert(index:Int, v:BigInteger):ArrayNode = readOnly()
+  override def insert(index:Int, v:String):ArrayNode = readOnly()
+  override def insert(index:Int, v:Boolean):ArrayNode = readOnly()
+  override def insert(index:Int, v:java.lang.Boolean):ArrayNode = readOnly()
+  override def insert(index:Int, v:Array[Byte]):ArrayNode = readOnly()
+  override protected def _add(node:JsonNode):ArrayNode = readOnly()
+  override protected def _insert(index:Int, node:JsonNode):ArrayNode = readOnly()
+}
@@ -0,0 +1,228 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.io._
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.util
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream
+import com.fasterxml.jackson.databind.{JavaType, JsonNode, ObjectMapper}
+
+import scala.collection.JavaConverters._
+
+/**
+  * Many pre-generated schemas in one file, written by JsonSchemaBinaryCatalogWriter.
+  *
+  * The file is memory-mapped, and looking up a schema by name is a lookup in the hash-table stored in the file - so
+  * nothing is loaded onto the heap until a schema is asked for. Files are limited to 2 GB. The offsets in the file are
+  * validated when it is opened.
+  *
+  * Layout (all ints are big-endian int32):
+  *
+  *   magic, version, schema-count, slot-count
+  *   slots:   slot-count ints - the offset of a name-record, or -1 if the slot is empty (open addressing, linear probing)
+  *   records: name-length, name (UTF-8), data-offset, data-length
+  *   data:    the schemas serialized as UTF-8
+  */
+class JsonSchemaBinaryCatalog private (buffer:ByteBuffer, objectMapper:ObjectMapper) {
+  import JsonSchemaBinaryCatalog._
+
+  // The number of schemas - each may have multiple names
+  val size:Int = buffer.getInt(8)
+
+  private val slotCount = buffer.getInt(12)
+
+  // Returns the (offset, length) of the data for name
+  private def find(name:String):Option[(Int, Int)] = {
+    val nameBytes = name.getBytes(StandardCharsets.UTF_8)
+    var slot = hash(name) & (slotCount - 1)
+    // Visits each slot at most once, even if no slot is empty
+    var probes = 0
+    while (probes < slotCount) {
+      val record = buffer.getInt(headerSize + slot * 4)
+      if (record == -1) return None
+      if (nameEquals(record, nameBytes)) {
+        val dataPos = record + 4 + nameBytes.length
+        return Some((buffer.getInt(dataPos), buffer.getInt(dataPos + 4)))
+      }
+      slot = (slot + 1) & (slotCount - 1)
+      probes = probes + 1
+    }
+    None
+  }
+
+  private def nameEquals(record:Int, nameBytes:Array[Byte]):Boolean = {
+    if (buffer.getInt(record) != nameBytes.length) return false
+    var i = 0
+    while (i < nameBytes.length) {
+      if (buffer.get(record + 4 + i) != nameBytes(i)) return false
+      i = i + 1
+    }
+    true
+  }
+
+  def contains(name:String):Boolean = find(name).isDefined
+
+  // The schema serialized as UTF-8, without copying it
+  def schemaBytes(name:String):Option[ByteBuffer] = find(name).map {
+    case (offset, length) =>
+      val b = buffer.duplicate()
+      b.position(offset)
+      b.limit(offset + length)
+      b.slice().asReadOnlyBuffer()
+  }
+
+  def schemaBytes(clazz:Class[_]):Option[ByteBuffer] = schemaBytes(clazz.getName)
+
+  // Parses the schema each time - the caller owns the returned node
+  def schema(name:String):Option[JsonNode] = schemaBytes(name).map(b => objectMapper.readTree(new ByteBufferBackedInputStream(b)))
+
+  def schema(clazz:Class[_]):Option[JsonNode] = schema(clazz.getName)
+
+  // All names, in no particular order
+  def names:List[String] = {
+    (0 until slotCount).toList.map(slot => buffer.getInt(headerSize + slot * 4)).filter(_ != -1).map {
+      record =>
+        val nameBytes = new Array[Byte](buffer.getInt(record))
+        val b = buffer.duplicate()
+        b.position(record + 4)
+        b.get(nameBytes)
+        new String(nameBytes, StandardCharsets.UTF_8)
+    }
+  }
+}
+
+object JsonSchemaBinaryCatalog {
+
+  private[jsonSchema] val magic = 0x4d4a5343 // "MJSC"
+  private[jsonSchema] val version = 1
+  private[jsonSchema] val headerSize = 16
+
+  // String.hashCode is specified, so it is the same when writing and reading
+  private[jsonSchema] def hash(name:String):Int = {
+    val h = name.hashCode
+    h ^ (h >>> 16)
+  }
+
+  def open(file:File):JsonSchemaBinaryCatalog = open(file, new ObjectMapper())
+
+  def open(file:File, objectMapper:ObjectMapper):JsonSchemaBinaryCatalog = {
+    val raf = new RandomAccessFile(file, "r")
+    // The mapping stays valid after the channel is closed
+    val buffer = try {
+      raf.getChannel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+    } finally {
+      raf.close()
+    }
+    if (buffer.limit() < headerSize || buffer.getInt(0) != magic) throw new IllegalArgumentException(s"$file is not a schema-catalog")
+    if (buffer.getInt(4) != version) throw new IllegalArgumentException(s"$file has unsupported schema-catalog version ${buffer.getInt(4)}")
+    invalidOffsets(buffer).foreach(error => throw new IllegalArgumentException(s"$file is a corrupt schema-catalog: $error"))
+    new JsonSchemaBinaryCatalog(buffer, objectMapper)
+  }
+
+  // Checks that all slots, records and data are within the file, so lookups never read outside it
+  private def invalidOffsets(buffer:ByteBuffer):Option[String] = {
+    val limit = buffer.limit().toLong
+    val size = buffer.getInt(8)
+    val slotCount = buffer.getInt(12)
+    if (size < 0) return Some(s"schema-count $size")
+    if (slotCount <= 0 || (slotCount & (slotCount - 1)) != 0) return Some(s"slot-count $slotCount is not a power of two")
+    val recordsOffset = headerSize + slotCount * 4L
+    if (recordsOffset > limit) return Some(s"slot-count $slotCount exceeds the file")
+
+    (0 until slotCount).iterator.map(slot => buffer.getInt(headerSize + slot * 4)).filter(_ != -1).map {
+      record =>
+        if (record < recordsOffset || record + 4L > limit) Some(s"record-offset $record is outside the records")
+        else {
+          val nameLength = buffer.getInt(record)
+          val dataPos = record + 4L + nameLength
+          if (nameLength < 0 || dataPos + 8 > limit) Some(s"name-length $nameLength at $record exceeds the file")
+          else {
+            val dataOffset = buffer.getInt(dataPos.toInt)
+            val dataLength = buffer.getInt(dataPos.toInt + 4)
+            if (dataOffset < 0 || dataLength < 0 || dataOffset.toLong + dataLength > limit) Some(s"data at $dataOffset (length $dataLength) exceeds the file")
+            else None
+          }
+        }
+    }.collectFirst { case Some(error) => error }
+  }
+}
+
+/**
+  * Writes a JsonSchemaBinaryCatalog.
+  */
+object JsonSchemaBinaryCatalogWriter {
+
+  /**
+    * Writes the schemas generated by generator for javaTypes. Each schema can be found using the class-name
+    * (or the canonical name for generic types) and its definition-name - unless the definition-name is used by multiple types.
+    */
+  def write(file:File, generator:JsonSchemaGenerator, javaTypes:Seq[JavaType]):Unit = {
+    val types = javaTypes.map(TypeKey(_)).distinct.map(_.javaType)
+    val classNames = types.map(t => if (t.getBindings.isEmpty) t.getRawClass.getName else t.toCanonical)
+    val definitionNames = types.map(generator.definitionName)
+    val unique = definitionNames.groupBy(identity).filter(_._2.size == 1).keySet -- classNames
+
+    val entries = types.indices.map {
+      i =>
+        val bytes = generator.generateJsonSchemaBytes(types(i))
+        val array = new Array[Byte](bytes.remaining())
+        bytes.get(array)
+        (classNames(i) :: List(definitionNames(i)).filter(unique.contains), array)
+    }
+    write(file, entries)
+  }
+
+  // Java API
+  def write(file:File, generator:JsonSchemaGenerator, javaTypes:util.Collection[JavaType]):Unit = write(file, generator, javaTypes.asScala.toList)
+
+  // Each entry is the names of a schema, and the schema serialized as UTF-8
+  def write(file:File, entries:Seq[(Seq[String], Array[Byte])]):Unit = writeEntries(file, entries.toIndexedSeq)
+
+  private def writeEntries(file:File, entries:IndexedSeq[(Seq[String], Array[Byte])]):Unit = {
+    import JsonSchemaBinaryCatalog._
+
+    val names = entries.zipWithIndex.flatMap { case ((ns, _), i) => ns.map(n => (n, n.getBytes(StandardCharsets.UTF_8), i)) }
+    val duplicates = names.groupBy(_._1).filter(_._2.size > 1).keys
+    if (duplicates.nonEmpty) throw new IllegalArgumentException(s"Duplicate names in schema-catalog: ${duplicates.mkString(", ")}")
+
+    // At most half full
+    var slotCount = 1
+    while (slotCount < names.size * 2) slotCount = slotCount * 2
+
+    val recordsOffset = headerSize.toLong + slotCount * 4L
+    val recordOffsets = names.scanLeft(recordsOffset)((offset, n) => offset + 12 + n._2.length)
+    val dataOffset = recordOffsets.last
+    val entryOffsets = entries.scanLeft(dataOffset)((offset, e) => offset + e._2.length)
+    if (entryOffsets.last > Int.MaxValue) throw new IllegalArgumentException("A schema-catalog is limited to 2 GB")
+
+    val slots = Array.fill(slotCount)(-1)
+    names.zip(recordOffsets).foreach {
+      case ((name, _, _), recordOffset) =>
+        var slot = hash(name) & (slotCount - 1)
+        while (slots(slot) != -1) slot = (slot + 1) & (slotCount - 1)
+        slots(slot) = recordOffset.toInt
+    }
+
+    // Readers never maps a half-written catalog
+    AtomicFiles.write(file) {
+      stream =>
+        val out = new DataOutputStream(stream)
+        out.writeInt(magic)
+        out.writeInt(version)
+        out.writeInt(entries.size)
+        out.writeInt(slotCount)
+        slots.foreach(out.writeInt)
+        names.foreach {
+          case (_, nameBytes, i) =>
+            out.writeInt(nameBytes.length)
+            out.write(nameBytes)
+            out.writeInt(entryOffsets(i).toInt)
+            out.writeInt(entries(i)._2.length)
+        }
+        entries.foreach(e => out.write(e._2))
+        out.flush()
+    }
+  }
+}
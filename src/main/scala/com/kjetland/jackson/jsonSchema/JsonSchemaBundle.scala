@@ -0,0 +1,37 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.util
+
+import com.fasterxml.jackson.databind.JavaType
+import com.fasterxml.jackson.databind.node.ObjectNode
+
+import scala.collection.immutable.ListMap
+
+/**
+  * One schema-document containing multiple root-types sharing the same definitions.
+  *
+  * @param schema the document. It has one definition for each root-type (and all types they use), and validates
+  *               json valid according to any of the root-types
+  * @param rootRefList the $ref to use for each of the root-types, e.g. "#/definitions/MyRequest" - in the order the
+  *                    root-types were given
+  */
+case class JsonSchemaBundle(schema:ObjectNode, rootRefList:List[(JavaType, String)]) {
+
+  // Lookups are linear - use rootRef() for bundles with many root-types
+  lazy val rootRefs:ListMap[JavaType, String] = ListMap(rootRefList: _*)
+
+  // Keyed by TypeKey, since many generic types share the same JavaType.hashCode()
+  private lazy val refsByType:Map[TypeKey, String] = rootRefList.map { case (javaType, ref) => TypeKey(javaType) -> ref }.toMap
+
+  // The $ref for javaType, if it is one of the root-types
+  def rootRef(javaType:JavaType):Option[String] = refsByType.get(TypeKey(javaType))
+
+  // Java-API
+  def getRootRefs:util.Map[JavaType, String] = {
+    val result = new util.LinkedHashMap[JavaType, String]()
+    rootRefList.foreach {
+      case (javaType, ref) => result.put(javaType, ref)
+    }
+    result
+  }
+}
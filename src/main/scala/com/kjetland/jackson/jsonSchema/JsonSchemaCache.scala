@@ -0,0 +1,155 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.GZIPOutputStream
+
+import com.fasterxml.jackson.databind.{JavaType, JsonNode, ObjectMapper}
+
+case class JsonSchemaCacheKey(javaType:JavaType, title:Option[String], description:Option[String])
+
+/**
+  * A cached schema. It is frozen (See FrozenJsonNode) since it is shared between all callers.
+  *
+  * The serialized versions of the schema are created the first time they are needed, and then reused.
+  * The byte-arrays must never be modified.
+  */
+class CachedJsonSchema(val schema:JsonNode, objectMapper:ObjectMapper) {
+
+  // The schema serialized as UTF-8 using objectMapper
+  lazy val utf8Bytes:Array[Byte] = objectMapper.writeValueAsBytes(schema)
+
+  // utf8Bytes compressed using gzip
+  lazy val gzipBytes:Array[Byte] = CachedJsonSchema.gzip(utf8Bytes)
+}
+
+object CachedJsonSchema {
+
+  def gzip(bytes:Array[Byte]):Array[Byte] = {
+    val out = new ByteArrayOutputStream(bytes.length / 4 + 64)
+    val gzipOut = new GZIPOutputStream(out)
+    try {
+      gzipOut.write(bytes)
+    } finally {
+      gzipOut.close()
+    }
+    out.toByteArray
+  }
+}
+
+case class JsonSchemaCacheStats(hitCount:Long, missCount:Long, evictionCount:Long, size:Int, weight:Long)
+
+object JsonSchemaCache {
+
+  // The weight of a schema is the number of nodes in it
+  def weigh(node:JsonNode):Long = {
+    var weight = 1L
+    val elements = node.elements()
+    while (elements.hasNext) {
+      weight = weight + weigh(elements.next())
+    }
+    weight
+  }
+}
+
+/**
+  * Thread-safe, bounded cache of generated schemas keyed by (JavaType, title, description).
+  *
+  * When the cache holds more than maxEntries schemas, or the total weight (number of json-nodes) of all cached schemas
+  * exceeds maxWeight, the least recently used schemas are evicted.
+  *
+  * A JsonSchemaCache must only be used by one JsonSchemaGenerator, since the cached schemas depends on the
+  * ObjectMapper and JsonSchemaConfig used when generating them.
+  *
+  * @param maxEntries max number of cached schemas
+  * @param maxWeight max total number of json-nodes in all cached schemas
+  */
+class JsonSchemaCache(val maxEntries:Int = 1000, val maxWeight:Long = Long.MaxValue) {
+
+  // Java API
+  def this(maxEntries:Int) = this(maxEntries, Long.MaxValue)
+
+  // Java API
+  def this() = this(1000, Long.MaxValue)
+
+  private case class Entry(cachedJsonSchema:CachedJsonSchema, weight:Long)
+
+  // accessOrder = true makes iteration order least-recently-used first
+  private val entries = new java.util.LinkedHashMap[JsonSchemaCacheKey, Entry](16, 0.75f, true)
+  private var totalWeight = 0L
+
+  private val hitCount = new AtomicLong()
+  private val missCount = new AtomicLong()
+  private val evictionCount = new AtomicLong()
+
+  def get(key:JsonSchemaCacheKey):Option[CachedJsonSchema] = {
+    val entry = entries.synchronized {
+      Option(entries.get(key))
+    }
+    if (entry.isDefined) hitCount.incrementAndGet() else missCount.incrementAndGet()
+    entry.map(_.cachedJsonSchema)
+  }
+
+  // Returns the schema now present in the cache for key. If another thread has already cached a schema for this key,
+  // that one is kept and returned.
+  def put(key:JsonSchemaCacheKey, cachedJsonSchema:CachedJsonSchema):CachedJsonSchema = {
+    val newEntry = Entry(cachedJsonSchema, JsonSchemaCache.weigh(cachedJsonSchema.schema))
+    entries.synchronized {
+      Option(entries.get(key)) match {
+        case Some(existing) =>
+          existing.cachedJsonSchema
+        case None =>
+          entries.put(key, newEntry)
+          totalWeight = totalWeight + newEntry.weight
+          evictIfNeeded()
+          cachedJsonSchema
+      }
+    }
+  }
+
+  private def evictIfNeeded(): Unit = {
+    val it = entries.values().iterator()
+    // Never evict the last entry, even if it alone exceeds maxWeight
+    while ((entries.size() > maxEntries || totalWeight > maxWeight) && entries.size() > 1 && it.hasNext) {
+      totalWeight = totalWeight - it.next().weight
+      it.remove()
+      evictionCount.incrementAndGet()
+    }
+  }
+
+  // Removes all cached schemas for javaType, regardless of title and description
+  def invalidate(javaType:JavaType):Unit = invalidateWhere(_.javaType == javaType)
+
+  // Removes all cached schemas for javaTypes with clazz as raw class
+  def invalidate(clazz:Class[_]):Unit = invalidateWhere(_.javaType.getRawClass == clazz)
+
+  private def invalidateWhere(f:JsonSchemaCacheKey => Boolean):Unit = {
+    entries.synchronized {
+      val it = entries.entrySet().iterator()
+      while (it.hasNext) {
+        val e = it.next()
+        if (f(e.getKey)) {
+          totalWeight = totalWeight - e.getValue.weight
+          it.remove()
+        }
+      }
+    }
+  }
+
+  def invalidateAll():Unit = {
+    entries.synchronized {
+      entries.clear()
+      totalWeight = 0L
+    }
+  }
+
+  def size:Int = entries.synchronized {
+    entries.size()
+  }
+
+  def stats:JsonSchemaCacheStats = {
+    entries.synchronized {
+      JsonSchemaCacheStats(hitCount.get(), missCount.get(), evictionCount.get(), entries.size(), totalWeight)
+    }
+  }
+}
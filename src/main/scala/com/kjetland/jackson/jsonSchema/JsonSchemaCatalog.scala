@@ -0,0 +1,157 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.io._
+import java.net.URL
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+import com.fasterxml.jackson.databind.{JsonNode, ObjectMapper}
+import io.github.classgraph.ClassGraph
+
+import scala.collection.JavaConverters._
+
+/**
+  * A schema in a JsonSchemaCatalog.
+  *
+  * @param configName the JsonSchemaConfig-preset used when generating it - See JsonSchemaConfig.presets
+  */
+case class JsonSchemaCatalogEntry(className:String, configName:String, resource:URL)
+
+/**
+  * Schemas generated at build-time by JsonSchemaCatalogWriter (e.g. using the sbt-plugin), and packaged as resources.
+  * Nothing is generated at runtime - the schemas are read when first used.
+  *
+  * Load it using JsonSchemaCatalog.load(). All catalogs on the classpath (e.g. one in each jar) are combined.
+  */
+class JsonSchemaCatalog private (val entries:Map[String, JsonSchemaCatalogEntry], objectMapper:ObjectMapper) {
+
+  private val schemas = new SchemaResourceCache(objectMapper)
+
+  def classNames:Set[String] = entries.keySet
+
+  def contains(clazz:Class[_]):Boolean = entries.contains(clazz.getName)
+
+  // The read-only schema for clazz - Use FrozenJsonNode.thaw() to get a mutable copy
+  def schema(clazz:Class[_]):Option[JsonNode] = schema(clazz.getName)
+
+  def schema(className:String):Option[JsonNode] = {
+    schemas.schema(className)(entries.get(className).map(_.resource))
+  }
+
+  // The schema as written by JsonSchemaCatalogWriter (UTF-8), e.g. for serving it without parsing it
+  def schemaBytes(clazz:Class[_]):Option[ByteBuffer] = {
+    entries.get(clazz.getName).map {
+      entry =>
+        val in = entry.resource.openStream()
+        try {
+          val out = new ByteArrayOutputStream()
+          val buffer = new Array[Byte](8192)
+          Iterator.continually(in.read(buffer)).takeWhile(_ != -1).foreach(n => out.write(buffer, 0, n))
+          ByteBuffer.wrap(out.toByteArray).asReadOnlyBuffer()
+        } finally {
+          in.close()
+        }
+    }
+  }
+}
+
+object JsonSchemaCatalog {
+
+  // One line for each class in the catalog, after the line "# config=<preset>"
+  val indexResourceName = "META-INF/mbknor-jackson-jsonSchema/catalog/index"
+
+  def schemaResourceName(className:String):String = s"META-INF/mbknor-jackson-jsonSchema/catalog/$className.json"
+
+  def load():JsonSchemaCatalog = load(classOf[JsonSchemaCatalog].getClassLoader)
+
+  def load(classLoader:ClassLoader):JsonSchemaCatalog = load(classLoader, new ObjectMapper())
+
+  def load(classLoader:ClassLoader, objectMapper:ObjectMapper):JsonSchemaCatalog = {
+    val entries = classLoader.getResources(indexResourceName).asScala.toList.flatMap {
+      url =>
+        val lines = SchemaResources.readLines(url)
+        val configName = lines.collectFirst { case line if line.startsWith("# config=") => line.stripPrefix("# config=") }
+          .getOrElse("vanillaJsonSchemaDraft4")
+        // The schemas are next to the index
+        lines.filterNot(_.startsWith("#")).map {
+          className => className -> JsonSchemaCatalogEntry(className, configName, new URL(url, s"$className.json"))
+        }
+    }.toMap
+    new JsonSchemaCatalog(entries, objectMapper)
+  }
+}
+
+/**
+  * Writes a JsonSchemaCatalog. Meant to be run at build-time (e.g. by the sbt-plugin), with the classes on the classpath:
+  *
+  *   JsonSchemaCatalogWriter <resource-directory> [--config <preset>] [--object-mapper <factory-class>] [--package <package>] [<class-name> ...]
+  *
+  * All public concrete classes in the packages are included. The factory-class is a
+  * java.util.function.Supplier[ObjectMapper] - without it, a plain ObjectMapper (with the Scala-module, if it is on the
+  * classpath) is used.
+  */
+object JsonSchemaCatalogWriter {
+
+  def write(resourceDirectory:File, classes:List[Class[_]], configName:String):List[File] = {
+    write(resourceDirectory, classes, configName, SchemaResources.objectMapper(None, getClass.getClassLoader))
+  }
+
+  def write(resourceDirectory:File, classes:List[Class[_]], configName:String, objectMapper:ObjectMapper):List[File] = {
+    val generator = new JsonSchemaGenerator(objectMapper, JsonSchemaConfig.preset(configName))
+    val sortedClasses = classes.distinct.sortBy(_.getName)
+    val schemaFiles = SchemaResources.write(resourceDirectory, sortedClasses, generator, JsonSchemaCatalog.schemaResourceName)
+
+    val indexFile = new File(resourceDirectory, JsonSchemaCatalog.indexResourceName)
+    AtomicFiles.write(indexFile) {
+      stream =>
+        val out = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))
+        out.println(s"# config=$configName")
+        sortedClasses.foreach(clazz => out.println(clazz.getName))
+        out.flush()
+    }
+
+    indexFile :: schemaFiles
+  }
+
+  // All public concrete classes in packages - not interfaces, abstract classes, annotations, anonymous classes or Scala
+  // objects (e.g. companion objects). Add abstract (e.g. polymorphic) types by their class-name
+  def publicClasses(packages:List[String], classLoader:ClassLoader):List[Class[_]] = {
+    if (packages.isEmpty) return List()
+    val scanResult = new ClassGraph().overrideClassLoaders(classLoader).whitelistPackages(packages:_*).enableClassInfo().scan()
+    try {
+      scanResult.getAllClasses.asScala.toList
+        .filter(c => c.isPublic && !c.isAbstract && !c.isInterfaceOrAnnotation && !c.isAnonymousInnerClass && !c.isSynthetic)
+        .filterNot(_.getName.endsWith("$"))
+        .map(c => Class.forName(c.getName, false, classLoader))
+    } finally {
+      scanResult.close()
+    }
+  }
+
+  def main(args:Array[String]):Unit = {
+    if (args.isEmpty) {
+      System.err.println("Usage: JsonSchemaCatalogWriter <resource-directory> [--config <preset>] [--object-mapper <factory-class>] [--package <package>] [<class-name> ...]")
+      System.exit(1)
+    }
+
+    var configName = "vanillaJsonSchemaDraft4"
+    var objectMapperFactory:Option[String] = None
+    var packages = List[String]()
+    var classNames = List[String]()
+    var rest = args.tail.toList
+    while (rest.nonEmpty) {
+      rest match {
+        case "--config" :: name :: tail        => configName = name; rest = tail
+        case "--object-mapper" :: name :: tail => objectMapperFactory = Some(name); rest = tail
+        case "--package" :: name :: tail       => packages = packages :+ name; rest = tail
+        case className :: tail                 => classNames = classNames :+ className; rest = tail
+        case Nil                               =>
+      }
+    }
+
+    val classLoader = Thread.currentThread().getContextClassLoader
+    val classes = classNames.map(Class.forName(_, false, classLoader)) ++ publicClasses(packages, classLoader)
+    val files = write(new File(args.head), classes, configName, SchemaResources.objectMapper(objectMapperFactory, classLoader))
+    println(s"Wrote ${files.size - 1} schemas to ${files.head.getParentFile}")
+  }
+}
@@ -0,0 +1,100 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+import com.fasterxml.jackson.databind.{JavaType, JsonNode}
+import com.kjetland.jackson.jsonSchema.annotations.JsonSchemaInject
+
+import scala.annotation.varargs
+import scala.collection.JavaConverters._
+
+/**
+  * Notified while JsonSchemaGenerator generates schemas - Register it using JsonSchemaGenerator.withGenerationListener.
+  * Override the callbacks you need - all of them do nothing by default.
+  *
+  * Only called when a schema is actually generated, not when it is found in a cache. All timings are in nanoseconds.
+  * nanos includes the time spent in nested types, while selfNanos excludes the time spent building the definitions
+  * (reported by definitionCreated) nested in it. When generating in parallel, the callbacks are called from multiple threads.
+  */
+abstract class JsonSchemaGenerationListener {
+
+  // Called before generating the schema (or bundle-entry) for a root-type
+  def rootStarted(javaType:JavaType):Unit = {}
+
+  // schema is the generated schema - without the definitions when they are streamed by writeJsonSchema, and the
+  // root-definition for bundles. It must not be modified
+  def rootFinished(javaType:JavaType, schema:JsonNode, nanos:Long, selfNanos:Long):Unit = {}
+
+  // Called instead of rootFinished when generating the schema for a root-type throws error
+  def rootFailed(javaType:JavaType, error:Throwable, nanos:Long):Unit = {}
+
+  // A new definition has been built, including all definitions it references which did not exist already
+  def definitionCreated(javaType:JavaType, ref:String, nanos:Long, selfNanos:Long):Unit = {}
+
+  // An existing definition is referenced, or a finished definition is taken from the DefinitionFragmentStore
+  def definitionReused(javaType:JavaType, ref:String):Unit = {}
+
+  // The subtypes for javaType have been resolved (Only once for each type and traversal)
+  def subtypesResolved(javaType:JavaType, subtypes:List[Class[_]], nanos:Long):Unit = {}
+
+  // @JsonSchemaInject has been applied to the schema for javaType (a class or the type of a property)
+  def injectApplied(javaType:JavaType, annotation:JsonSchemaInject, nanos:Long):Unit = {}
+}
+
+object JsonSchemaGenerationListener {
+
+  // A listener notifying all listeners, in order
+  @varargs
+  def combine(listeners:JsonSchemaGenerationListener*):JsonSchemaGenerationListener = new JsonSchemaGenerationListener {
+    override def rootStarted(javaType:JavaType):Unit = listeners.foreach(_.rootStarted(javaType))
+    override def rootFinished(javaType:JavaType, schema:JsonNode, nanos:Long, selfNanos:Long):Unit = listeners.foreach(_.rootFinished(javaType, schema, nanos, selfNanos))
+    override def rootFailed(javaType:JavaType, error:Throwable, nanos:Long):Unit = listeners.foreach(_.rootFailed(javaType, error, nanos))
+    override def definitionCreated(javaType:JavaType, ref:String, nanos:Long, selfNanos:Long):Unit = listeners.foreach(_.definitionCreated(javaType, ref, nanos, selfNanos))
+    override def definitionReused(javaType:JavaType, ref:String):Unit = listeners.foreach(_.definitionReused(javaType, ref))
+    override def subtypesResolved(javaType:JavaType, subtypes:List[Class[_]], nanos:Long):Unit = listeners.foreach(_.subtypesResolved(javaType, subtypes, nanos))
+    override def injectApplied(javaType:JavaType, annotation:JsonSchemaInject, nanos:Long):Unit = listeners.foreach(_.injectApplied(javaType, annotation, nanos))
+  }
+}
+
+// totalNanos includes the time spent building the definitions nested in the type, selfNanos does not
+case class JsonSchemaGenerationTiming(typeName:String, count:Long, totalNanos:Long, selfNanos:Long)
+
+/**
+  * Sums up the time spent building roots and definitions for each type, to find which types dominate generation time.
+  *
+  * The total time of a type includes its nested definitions, so the roots (and types high up in the type-graph) always
+  * have the highest totals. The timings are sorted by self-time, which only counts the time spent in the type itself.
+  */
+class JsonSchemaGenerationTimings extends JsonSchemaGenerationListener {
+
+  // count, totalNanos and selfNanos for each type
+  private val totals = new ConcurrentHashMap[String, (AtomicLong, AtomicLong, AtomicLong)]()
+
+  override def definitionCreated(javaType:JavaType, ref:String, nanos:Long, selfNanos:Long):Unit = add(javaType, nanos, selfNanos)
+
+  override def rootFinished(javaType:JavaType, schema:JsonNode, nanos:Long, selfNanos:Long):Unit = add(javaType, nanos, selfNanos)
+
+  private def add(javaType:JavaType, nanos:Long, selfNanos:Long):Unit = {
+    val name = javaType.toCanonical
+    val t = Option(totals.get(name)).getOrElse {
+      val created = (new AtomicLong(), new AtomicLong(), new AtomicLong())
+      Option(totals.putIfAbsent(name, created)).getOrElse(created)
+    }
+    t._1.incrementAndGet()
+    t._2.addAndGet(nanos)
+    t._3.addAndGet(selfNanos)
+  }
+
+  // The types with the highest self-time first
+  def timings:List[JsonSchemaGenerationTiming] = {
+    totals.asScala.toList.map {
+      case (name, (count, total, self)) => JsonSchemaGenerationTiming(name, count.get(), total.get(), self.get())
+    }.sortBy(-_.selfNanos)
+  }
+
+  // Java API
+  def getTimings:java.util.List[JsonSchemaGenerationTiming] = timings.asJava
+
+  def reset():Unit = totals.clear()
+}
@@ -1,15 +1,23 @@
 package com.kjetland.jackson.jsonSchema
 
+import java.io.{File, FileInputStream, OutputStream}
 import java.lang.annotation.Annotation
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, LinkOption}
+import java.security.MessageDigest
+import java.time.Duration
 import java.util
+import java.util.concurrent.{CompletableFuture, CompletionException, CompletionStage, ConcurrentHashMap, Executor}
 import java.util.function.Supplier
 import java.util.{Optional, List => JList}
 
-import com.fasterxml.jackson.annotation.{JsonProperty, JsonPropertyDescription, JsonSubTypes, JsonTypeInfo, JsonTypeName}
+import com.fasterxml.jackson.annotation.{JsonProperty, JsonPropertyDescription, JsonSubTypes, JsonTypeInfo}
+import com.fasterxml.jackson.core.{JsonEncoding, JsonGenerator}
 import com.fasterxml.jackson.core.JsonParser.NumberType
 import com.fasterxml.jackson.databind._
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize
-import com.fasterxml.jackson.databind.introspect.{AnnotatedClass, AnnotatedClassResolver}
+import com.fasterxml.jackson.databind.introspect.{AnnotatedClass, AnnotatedClassResolver, AnnotatedMember}
 import com.fasterxml.jackson.databind.jsonFormatVisitors._
 import com.fasterxml.jackson.databind.jsontype.impl.MinimalClassNameIdResolver
 import com.fasterxml.jackson.databind.node.{ArrayNode, JsonNodeFactory, ObjectNode}
@@ -20,6 +28,9 @@ import javax.validation.constraints._
 import javax.validation.groups.Default
 import org.slf4j.LoggerFactory
 
+import scala.collection.immutable.ListMap
+import scala.collection.mutable
+
 object JsonSchemaGenerator {
 }
 
@@ -103,6 +114,16 @@ object JsonSchemaConfig {
     jsonSuppliers = Map()
   )
 
+  // The predefined configs by name - used when the config must be given as a string, e.g. by JsonSchemaCatalogWriter
+  val presets:Map[String, JsonSchemaConfig] = Map(
+    "vanillaJsonSchemaDraft4" -> vanillaJsonSchemaDraft4,
+    "html5EnabledSchema" -> html5EnabledSchema,
+    "nullableJsonSchemaDraft4" -> nullableJsonSchemaDraft4
+  )
+
+  def preset(name:String):JsonSchemaConfig = presets.getOrElse(name,
+    throw new IllegalArgumentException(s"Unknown JsonSchemaConfig-preset '$name' - use one of ${presets.keys.toList.sorted.mkString(", ")}"))
+
   // Java-API
   def create(
               autoGenerateTitleForProperties:Boolean,
@@ -159,8 +180,14 @@ case class SubclassesResolverImpl
 (
   classGraph:Option[ClassGraph] = None,
   packagesToScan:List[String] = List(),
-  classesToScan:List[String] = List()
-) extends SubclassesResolver {
+  classesToScan:List[String] = List(),
+  scanCacheDirectory:Option[File] = None, // If set, the subtype-index is stored here and reused as long as the classpath is unchanged
+  jarsToScan:List[String] = List(), // Jar-names (e.g. "my-model-*.jar"). Directories on the classpath are still scanned
+  jarsToReject:List[String] = List(),
+  modulesToScan:List[String] = List(),
+  scanThreads:Option[Int] = None, // Number of threads used by ClassGraph when scanning
+  classLoader:ClassLoader = Thread.currentThread().getContextClassLoader // Scanned in addition to the ClassLoaders found by ClassGraph
+) extends SubtypeIndexResolver with AutoCloseable {
   import scala.collection.JavaConverters._
 
   def this() = this(None, List(), List())
@@ -189,7 +216,59 @@ case class SubclassesResolverImpl
     this.copy(classesToScan = classesToScan.asScala.toList)
   }
 
-  lazy val reflection:ScanResult = {
+  // Scala API
+  def withJarsToScan(jarsToScan:List[String]):SubclassesResolverImpl = {
+    this.copy(jarsToScan = jarsToScan)
+  }
+
+  // Java API
+  def withJarsToScan(jarsToScan:JList[String]):SubclassesResolverImpl = {
+    this.copy(jarsToScan = jarsToScan.asScala.toList)
+  }
+
+  // Scala API
+  def withJarsToReject(jarsToReject:List[String]):SubclassesResolverImpl = {
+    this.copy(jarsToReject = jarsToReject)
+  }
+
+  // Java API
+  def withJarsToReject(jarsToReject:JList[String]):SubclassesResolverImpl = {
+    this.copy(jarsToReject = jarsToReject.asScala.toList)
+  }
+
+  // Scala API
+  def withModulesToScan(modulesToScan:List[String]):SubclassesResolverImpl = {
+    this.copy(modulesToScan = modulesToScan)
+  }
+
+  // Java API
+  def withModulesToScan(modulesToScan:JList[String]):SubclassesResolverImpl = {
+    this.copy(modulesToScan = modulesToScan.asScala.toList)
+  }
+
+  def withScanThreads(scanThreads:Int):SubclassesResolverImpl = {
+    this.copy(scanThreads = Some(scanThreads))
+  }
+
+  // The ClassLoader to scan, e.g. the one of a tenant - The default is the context ClassLoader when the resolver was created
+  def withClassLoader(classLoader:ClassLoader):SubclassesResolverImpl = {
+    this.copy(classLoader = classLoader)
+  }
+
+  /**
+    * Caches the subtype-index in scanCacheDirectory, so later runs only have to read a file instead of scanning.
+    * The cache-file is keyed by a fingerprint of the classpath (name, size and last-modified of all jars and
+    * class-files) and the scan-options. Not used together with withClassGraph, since its configuration is unknown.
+    */
+  def withScanCacheDirectory(scanCacheDirectory:File):SubclassesResolverImpl = {
+    this.copy(scanCacheDirectory = Option(scanCacheDirectory))
+  }
+
+  // Only used to build subtypeIndex - The ScanResult is closed when the index is built.
+  @deprecated("The ScanResult is no longer kept - subclasses are resolved using subtypeIndex", "1.0.40")
+  lazy val reflection:ScanResult = scan()
+
+  private def scan():ScanResult = {
 
     var classGraphConfigured:Boolean = false
 
@@ -209,20 +288,237 @@ case class SubclassesResolverImpl
       _classGraph.whitelistClasses( classesToScan:_* )
     }
 
+    if ( jarsToScan.nonEmpty ) {
+      classGraphConfigured = true
+      _classGraph.whitelistJars( jarsToScan:_* )
+    }
+
+    if ( jarsToReject.nonEmpty ) {
+      _classGraph.blacklistJars( jarsToReject:_* )
+    }
+
+    if ( modulesToScan.nonEmpty ) {
+      classGraphConfigured = true
+      _classGraph.whitelistModules( modulesToScan:_* )
+    }
+
     if ( !classGraphConfigured ) {
       LoggerFactory.getLogger(this.getClass).warn(s"Performance-warning. Since SubclassesResolver is not configured," +
         s" it scans the entire classpath. " +
         s"https://github.com/mbknor/mbknor-jackson-jsonSchema#subclass-resolving-using-reflection")
     }
 
-    _classGraph.enableClassInfo().scan()
+    Option(classLoader).foreach(_classGraph.addClassLoader)
+
+    _classGraph.enableClassInfo()
+    scanThreads.map(_classGraph.scan(_)).getOrElse(_classGraph.scan())
+  }
+
+  // The report is None when the index is read from scanCacheDirectory
+  private def buildIndex():(SubtypeIndex, Option[ScanReport]) = {
+    scanCacheFile() match {
+      case Some(file) =>
+        readCachedIndex(file).map(index => (index, None)).getOrElse {
+          val (index, report) = scanToIndex()
+          (cacheIndex(file, index), Some(report))
+        }
+      case None       =>
+        val (index, report) = scanToIndex()
+        (index, Some(report))
+    }
   }
 
-  override def getSubclasses(clazz: Class[_]): List[Class[_]] = {
-    if (clazz.isInterface)
-      reflection.getClassesImplementing(clazz.getName).loadClasses().asScala.toList
-    else
-      reflection.getSubclasses(clazz.getName).loadClasses().asScala.toList
+  // Identifies what is scanned, so resolvers with the same scanSpec can share the index using SubtypeIndexRegistry.
+  // None when using a custom ClassGraph, since its configuration is unknown
+  def scanSpec:Option[ScanSpec] = if (classGraph.isEmpty) {
+    Some(ScanSpec(packagesToScan, classesToScan, jarsToScan, jarsToReject, modulesToScan, scanCacheDirectory, classLoader))
+  } else None
+
+  // The scanSpec this resolver has acquired from SubtypeIndexRegistry - Guarded by SubtypeIndexRegistry's lock
+  private var acquired:Option[ScanSpec] = None
+  private var closed = false
+
+  // Releases the index in SubtypeIndexRegistry. This resolver can still be used, but others will have to scan again
+  override def close(): Unit = SubtypeIndexRegistry.synchronized {
+    closed = true
+    acquired.foreach(SubtypeIndexRegistry.release)
+    acquired = None
+  }
+
+  // Called by SubtypeIndexRegistry while holding its lock - A closed resolver does not acquire the index
+  private def register(spec:ScanSpec):Boolean = {
+    if (!closed) acquired = Some(spec)
+    !closed
+  }
+
+  private def scanToIndex():(SubtypeIndex, ScanReport) = JsonSchemaJfr.recordScan(packagesToScan) {
+    val start = System.nanoTime()
+    val scanResult = scan()
+    try {
+      val index = SubtypeIndex(scanResult)
+      val report = ScanReport(
+        classpathElements = scanResult.getClasspathFiles.asScala.toList,
+        modules = scanResult.getModules.asScala.toList.map(_.getName),
+        classes = scanResult.getAllClasses.size(),
+        subtypeIndexSize = index.size,
+        duration = Duration.ofNanos(System.nanoTime() - start)
+      )
+      LoggerFactory.getLogger(this.getClass).debug(report.toString)
+      (index, report)
+    } finally {
+      scanResult.close()
+    }
+  }
+
+  private def scanCacheFile():Option[File] = scanCacheDirectory.filter(_ => classGraph.isEmpty).map {
+    dir =>
+      val digest = MessageDigest.getInstance("SHA-256")
+      def add(s:String):Unit = digest.update((s + "\n").getBytes(StandardCharsets.UTF_8))
+
+      add("format " + SubtypeIndex.formatVersion)
+      packagesToScan.foreach(p => add("package " + p))
+      classesToScan.foreach(c => add("class " + c))
+      jarsToScan.foreach(j => add("jar " + j))
+      jarsToReject.foreach(j => add("reject-jar " + j))
+      modulesToScan.foreach(m => add("module " + m))
+
+      def addFile(file:File):Unit = add(s"${file.getAbsolutePath} ${file.length()} ${file.lastModified()}")
+
+      // Jars, and the class-files in directories - Symbolic links inside directories are not followed
+      def addClasspathElement(element:File):Unit = {
+        if (element.isDirectory) {
+          val paths = Files.walk(element.toPath)
+          val classFiles = try {
+            paths.iterator().asScala.filter(p => p.toString.endsWith(".class") && Files.isRegularFile(p, LinkOption.NOFOLLOW_LINKS)).map(_.toFile).toList
+          } finally {
+            paths.close()
+          }
+          classFiles.sortBy(_.getPath).foreach(addFile)
+        } else {
+          addFile(element)
+        }
+      }
+      val classpathGraph = new ClassGraph()
+      Option(classLoader).foreach(classpathGraph.addClassLoader)
+      classpathGraph.getClasspathFiles.asScala.foreach(addClasspathElement)
+
+      val fingerprint = digest.digest().map(b => "%02x".format(b & 0xff)).mkString
+      new File(dir, s"subtype-index-$fingerprint")
+  }
+
+  // None if there is no cached index - or if it cannot be read, in which case it is deleted and scanned again
+  private def readCachedIndex(file:File):Option[SubtypeIndex] = {
+    if (!file.exists()) return None
+    try {
+      val in = new FileInputStream(file)
+      try {
+        Some(SubtypeIndex.read(in))
+      } finally {
+        in.close()
+      }
+    } catch {
+      case e:Exception =>
+        LoggerFactory.getLogger(this.getClass).warn(s"Scanning again, since the cached subtype-index $file cannot be read: ${e.getMessage}")
+        file.delete()
+        None
+    }
+  }
+
+  private def cacheIndex(file:File, index:SubtypeIndex):SubtypeIndex = {
+    AtomicFiles.write(file)(index.write)
+    index
+  }
+
+  // Completed with the index when the scan is done. The scan is started by startBackgroundScan(),
+  // or by the first thread needing the index. If the scan fails, the next scan uses a new future - Guarded by this
+  private var scanned = new CompletableFuture[SubtypeIndex]()
+  private var scanStarted = false
+  @volatile private var _scanDuration:Option[Duration] = None
+  @volatile private var _scanReport:Option[ScanReport] = None
+
+  // Returns the future completed by the current scan
+  private def startScan(executor:Executor):CompletableFuture[SubtypeIndex] = {
+    val (future, starting) = synchronized {
+      val starting = !scanStarted
+      scanStarted = true
+      (scanned, starting)
+    }
+    if (starting) {
+      try {
+        executor.execute(new Runnable {
+          override def run(): Unit = {
+            val start = System.nanoTime()
+            try {
+              val (index, report) = scanSpec match {
+                case Some(spec) => SubtypeIndexRegistry.acquire(spec)(register(spec))(buildIndex())
+                case None => buildIndex()
+              }
+              _scanReport = report
+              _scanDuration = Some(Duration.ofNanos(System.nanoTime() - start))
+              future.complete(index)
+            } catch {
+              case e:Throwable => scanFailed(future, e)
+            }
+          }
+        })
+      } catch {
+        // E.g. RejectedExecutionException - the scan never runs
+        case e:Throwable =>
+          scanFailed(future, e)
+          throw e
+      }
+    }
+    future
+  }
+
+  // Lets the next call needing the index scan again
+  private def scanFailed(future:CompletableFuture[SubtypeIndex], e:Throwable):Unit = {
+    synchronized {
+      scanned = new CompletableFuture[SubtypeIndex]()
+      scanStarted = false
+    }
+    future.completeExceptionally(e)
+  }
+
+  /**
+    * Starts the scan right away using executor, so it is (hopefully) done when the subclasses are needed.
+    * Should be called last, when the resolver is completely configured - Copies made by the with...-methods must scan again.
+    */
+  def startBackgroundScan(executor:Executor):SubclassesResolverImpl = {
+    startScan(executor)
+    this
+  }
+
+  // Starts the scan right away using a new daemon-thread
+  def startBackgroundScan():SubclassesResolverImpl = startBackgroundScan(new Executor {
+    override def execute(command: Runnable): Unit = {
+      val thread = new Thread(command, "SubclassesResolverImpl-scan")
+      thread.setDaemon(true)
+      thread.start()
+    }
+  })
+
+  // Completes when the scan is done - or exceptionally if it fails
+  def whenScanned:CompletionStage[SubtypeIndex] = synchronized(scanned).thenApply[SubtypeIndex](new java.util.function.Function[SubtypeIndex, SubtypeIndex] {
+    override def apply(index: SubtypeIndex): SubtypeIndex = index
+  })
+
+  // How long the scan took (including building the index) - None until the scan is done
+  def scanDuration:Option[Duration] = _scanDuration
+
+  // What was scanned - None until the scan is done, or if the index was read from scanCacheDirectory
+  def scanReport:Option[ScanReport] = _scanReport
+
+  // Blocks if the scan is still running. If the scan is not started, it is done by the calling thread
+  def subtypeIndex:SubtypeIndex = {
+    val future = startScan(new Executor {
+      override def execute(command: Runnable): Unit = command.run()
+    })
+    try {
+      future.join()
+    } catch {
+      case e:CompletionException => throw e.getCause
+    }
   }
 }
 
@@ -245,7 +541,9 @@ case class JsonSchemaConfig
   subclassesResolver:SubclassesResolver = new SubclassesResolverImpl(), // Using default impl that scans entire classpath
   failOnUnknownProperties:Boolean = true,
   javaxValidationGroups:Array[Class[_]] = Array(), // Used to match against different validation-groups (javax.validation.constraints)
-  jsonSchemaDraft:JsonSchemaDraft = JsonSchemaDraft.DRAFT_04
+  jsonSchemaDraft:JsonSchemaDraft = JsonSchemaDraft.DRAFT_04,
+  definitionNamingStrategy:DefinitionNamingStrategy = DefaultDefinitionNamingStrategy,
+  memoizeJsonSupplierOutput:Boolean = false // If true, each jsonSupplier used by @JsonSchemaInject is only called once
 ) {
 
   def withFailOnUnknownProperties(failOnUnknownProperties:Boolean):JsonSchemaConfig = {
@@ -263,6 +561,14 @@ case class JsonSchemaConfig
   def withJsonSchemaDraft(jsonSchemaDraft:JsonSchemaDraft):JsonSchemaConfig = {
     this.copy(jsonSchemaDraft = jsonSchemaDraft)
   }
+
+  def withDefinitionNamingStrategy(definitionNamingStrategy:DefinitionNamingStrategy):JsonSchemaConfig = {
+    this.copy( definitionNamingStrategy = definitionNamingStrategy )
+  }
+
+  def withMemoizeJsonSupplierOutput(memoizeJsonSupplierOutput:Boolean):JsonSchemaConfig = {
+    this.copy( memoizeJsonSupplierOutput = memoizeJsonSupplierOutput )
+  }
 }
 
 
@@ -272,12 +578,20 @@ case class JsonSchemaConfig
   * @param rootObjectMapper pre-configured ObjectMapper
   * @param debug Default = false - set to true if generator should log some debug info while generating the schema
   * @param config default = vanillaJsonSchemaDraft4. Please use html5EnabledSchema if generating HTML5 GUI, e.g. using https://github.com/jdorn/json-editor
+  * @param schemaCache default = None. If set, generated schemas are cached and reused - See [[JsonSchemaCache]]
+  * @param definitionFragmentStore default = None. If set, finished definitions are reused between generations - See [[DefinitionFragmentStore]]
+  * @param persistentSchemaCache default = None. If set, generated schemas are stored on disk and reused after restarts - See [[PersistentJsonSchemaCache]]
+  * @param generationListener default = None. If set, it is notified (with timings) while generating - See [[JsonSchemaGenerationListener]]
   */
 class JsonSchemaGenerator
 (
   val rootObjectMapper: ObjectMapper,
   debug:Boolean = false,
-  config:JsonSchemaConfig = JsonSchemaConfig.vanillaJsonSchemaDraft4
+  val config:JsonSchemaConfig = JsonSchemaConfig.vanillaJsonSchemaDraft4,
+  val schemaCache:Option[JsonSchemaCache] = None,
+  val definitionFragmentStore:Option[DefinitionFragmentStore] = None,
+  val persistentSchemaCache:Option[PersistentJsonSchemaCache] = None,
+  val generationListener:Option[JsonSchemaGenerationListener] = None
 ) {
 
   val javaxValidationGroups = config.javaxValidationGroups
@@ -288,10 +602,46 @@ class JsonSchemaGenerator
   // Java API
   def this(rootObjectMapper: ObjectMapper, config:JsonSchemaConfig) = this(rootObjectMapper, false, config)
 
+  def withSchemaCache(schemaCache:JsonSchemaCache):JsonSchemaGenerator = {
+    new JsonSchemaGenerator(rootObjectMapper, debug, config, Option(schemaCache), definitionFragmentStore, persistentSchemaCache, generationListener)
+  }
+
+  def withDefinitionFragmentStore(definitionFragmentStore:DefinitionFragmentStore):JsonSchemaGenerator = {
+    new JsonSchemaGenerator(rootObjectMapper, debug, config, schemaCache, Option(definitionFragmentStore), persistentSchemaCache, generationListener)
+  }
+
+  def withPersistentSchemaCache(persistentSchemaCache:PersistentJsonSchemaCache):JsonSchemaGenerator = {
+    new JsonSchemaGenerator(rootObjectMapper, debug, config, schemaCache, definitionFragmentStore, Option(persistentSchemaCache), generationListener)
+  }
+
+  def withGenerationListener(generationListener:JsonSchemaGenerationListener):JsonSchemaGenerator = {
+    new JsonSchemaGenerator(rootObjectMapper, debug, config, schemaCache, definitionFragmentStore, persistentSchemaCache, Option(generationListener))
+  }
+
+  // Emits JDK Flight Recorder-events while generating, in addition to notifying generationListener - See JsonSchemaJfr
+  def withJfrEvents():JsonSchemaGenerator = {
+    JsonSchemaJfr.listener match {
+      case None      => this // JFR is not available
+      case Some(jfr) => withGenerationListener(generationListener.map(l => JsonSchemaGenerationListener.combine(l, jfr)).getOrElse(jfr))
+    }
+  }
+
   import scala.collection.JavaConverters._
 
   val log = LoggerFactory.getLogger(getClass)
 
+  // Definition-names only depends on the type (and config), so they are only computed once
+  private val definitionNames = new ConcurrentHashMap[TypeKey, String]()
+
+  private[jsonSchema] def definitionName(_type:JavaType):String = {
+    val key = TypeKey(_type)
+    Option(definitionNames.get(key)).getOrElse {
+      val name = config.definitionNamingStrategy.getDefinitionName(_type, config)
+      definitionNames.putIfAbsent(key, name)
+      name
+    }
+  }
+
   val dateFormatMapping = Map[String,String](
     // Java7 dates
     "java.time.LocalDateTime" -> "datetime-local",
@@ -381,14 +731,162 @@ class JsonSchemaGenerator
       .filter(annotationIsApplicable(_))
   }
 
+  // Everything the visitors need from the annotations on a property.
+  // Annotations not applicable to javaxValidationGroups are already filtered out - except for the
+  // ...RegardlessOfGroups-fields, which have always ignored the validation-groups.
+  case class PropertyFacts
+  (
+    notNull:Boolean,
+    notBlank:Boolean,
+    notEmpty:Boolean,
+    notEmptyRegardlessOfGroups:Boolean,
+    pattern:Option[String], // From @Pattern.List, @Pattern or @NotBlank - in that order
+    email:Boolean,
+    size:Option[(Int, Int)],
+    min:Option[Long],
+    max:Option[Long],
+    decimalMin:Option[Double],
+    decimalMax:Option[Double],
+    defaultValue:Option[String],
+    examples:Option[List[String]],
+    examplesRegardlessOfGroups:Option[List[String]],
+    format:Option[String], // From @JsonSchemaFormat
+    description:Option[String],
+    title:Option[String],
+    options:Option[List[(String, String)]],
+    inject:Option[JsonSchemaInject]
+  ) {
+    // javax.validation-annotations making the property required
+    def validationRequired:Boolean = notNull || notBlank || notEmpty
+  }
+
+  // The annotations of a property never change, so the facts are only resolved once for each property (AnnotatedMember),
+  // for as long as Jackson keeps it.
+  private val propertyFactsCache = new WeakIdentityCache[AnnotatedMember, PropertyFacts]()
+
+  private def propertyFacts(p:BeanProperty):PropertyFacts = {
+    Option(p.getMember) match {
+      case Some(member) => propertyFactsCache.getOrElseUpdate(member)(resolvePropertyFacts(p))
+      case None         => resolvePropertyFacts(p)
+    }
+  }
+
+  private def resolvePropertyFacts(p:BeanProperty):PropertyFacts = {
+    val notBlank = selectAnnotation(p, classOf[NotBlank]).isDefined
+
+    val defaultValue = selectAnnotation(p, classOf[JsonProperty]).map(_.defaultValue())
+      // Since it is default set to "", we should only use it if it is nonEmpty
+      .filter(_.nonEmpty)
+      .orElse(selectAnnotation(p, classOf[JsonSchemaDefault]).map(_.value()))
+
+    PropertyFacts(
+      notNull = selectAnnotation(p, classOf[NotNull]).isDefined,
+      notBlank = notBlank,
+      notEmpty = selectAnnotation(p, classOf[NotEmpty]).isDefined,
+      notEmptyRegardlessOfGroups = p.getAnnotation(classOf[NotEmpty]) != null,
+      pattern = selectAnnotation(p, classOf[Pattern.List])
+        .map(_.value().map(_.regexp).foldLeft("^")(_ + "(?=" + _ + ")").concat(".*$"))
+        .orElse(selectAnnotation(p, classOf[Pattern]).map(_.regexp()))
+        .orElse(if (notBlank) Some("^.*\\S+.*$") else None),
+      email = selectAnnotation(p, classOf[Email]).isDefined,
+      size = selectAnnotation(p, classOf[Size]).map(size => (size.min(), size.max())),
+      min = selectAnnotation(p, classOf[Min]).map(_.value()),
+      max = selectAnnotation(p, classOf[Max]).map(_.value()),
+      decimalMin = selectAnnotation(p, classOf[DecimalMin]).map(_.value().toDouble),
+      decimalMax = selectAnnotation(p, classOf[DecimalMax]).map(_.value().toDouble),
+      defaultValue = defaultValue,
+      examples = selectAnnotation(p, classOf[JsonSchemaExamples]).map(_.value().toList),
+      examplesRegardlessOfGroups = Option(p.getAnnotation(classOf[JsonSchemaExamples])).map(_.value().toList),
+      format = Option(p.getAnnotation(classOf[JsonSchemaFormat])).map(_.value()),
+      description = Option(p.getAnnotation(classOf[JsonSchemaDescription])).map(_.value())
+        .orElse(Option(p.getAnnotation(classOf[JsonPropertyDescription])).map(_.value())),
+      title = Option(p.getAnnotation(classOf[JsonSchemaTitle])).map(_.value()),
+      options = Option(p.getAnnotation(classOf[JsonSchemaOptions])).map(_.items().map(item => (item.name, item.value)).toList),
+      inject = selectAnnotation(p, classOf[JsonSchemaInject])
+    )
+  }
+
+  // A @JsonSchemaInject prepared for injecting: json parsed, paths split and jsonSupplier instantiated.
+  // Shared between generations, so nothing in it must ever be modified.
+  private class InjectTemplate(a:JsonSchemaInject) {
+    val json:JsonNode = rootObjectMapper.readTree(a.json())
+
+    private val jsonSupplier:Option[Supplier[JsonNode]] = Option(a.jsonSupplier()).map(_.newInstance())
+
+    private val jsonSupplierViaLookup:Option[Supplier[JsonNode]] = Option(a.jsonSupplierViaLookup()).filter(_.nonEmpty).map {
+      key => config.jsonSuppliers.get(key).getOrElse(throw new Exception(s"@JsonSchemaInject(jsonSupplierLookup='$key') does not exist in config.jsonSupplierLookup-map"))
+    }
+
+    private lazy val memoizedSupplierJson:List[JsonNode] = (jsonSupplier.toList ++ jsonSupplierViaLookup).flatMap(s => Option(s.get()))
+
+    // The json from the suppliers, in the order it is applied
+    def supplierJson:List[JsonNode] = {
+      if (config.memoizeJsonSupplierOutput) memoizedSupplierJson.map(_.deepCopy[JsonNode]())
+      else (jsonSupplier.toList ++ jsonSupplierViaLookup).flatMap(s => Option(s.get()))
+    }
+
+    // strings, ints and bools - in the order they are applied
+    val values:List[(Array[String], (ObjectNode, String) => Unit)] =
+      a.strings().toList.map(v => (v.path().split('/'), (o:ObjectNode, n:String) => { o.put(n, v.value()); () })) ++
+      a.ints().toList.map(v => (v.path().split('/'), (o:ObjectNode, n:String) => { o.put(n, v.value()); () })) ++
+      a.bools().toList.map(v => (v.path().split('/'), (o:ObjectNode, n:String) => { o.put(n, v.value()); () }))
+
+    val merge:Boolean = a.merge()
+  }
+
+  // Each @JsonSchemaInject is only prepared once, for as long as the annotation is used
+  private val injectTemplates = new WeakIdentityCache[JsonSchemaInject, InjectTemplate]()
+
+  private def injectTemplate(a:JsonSchemaInject):InjectTemplate = injectTemplates.getOrElseUpdate(a)(new InjectTemplate(a))
+
+
+  // created is true if the definition was created by this call
+  case class DefinitionInfo(ref:Option[String], jsonObjectFormatVisitor: Option[JsonObjectFormatVisitor], created:Boolean = false)
+
+  case class PolymorphismInfo(typePropertyName:String, subTypeName:String)
+
+  // Introspection-results which only depends on the type. Can be shared between multiple generations, also concurrently.
+  class TraversalContext {
+    private val annotatedClasses = new ConcurrentHashMap[TypeKey, AnnotatedClass]()
+    private val subTypes = new ConcurrentHashMap[TypeKey, List[Class[_]]]()
+    private val polymorphismInfos = new ConcurrentHashMap[TypeKey, Option[PolymorphismInfo]]()
+
+    private def memoize[V](map:ConcurrentHashMap[TypeKey, V], _type:JavaType)(resolve: => V):V = {
+      val key = TypeKey(_type)
+      Option(map.get(key)).getOrElse {
+        val value = resolve
+        Option(map.putIfAbsent(key, value)).getOrElse(value)
+      }
+    }
+
+    def annotatedClass(_type:JavaType)(resolve: => AnnotatedClass):AnnotatedClass = memoize(annotatedClasses, _type)(resolve)
+
+    def subTypes(_type:JavaType)(resolve: => List[Class[_]]):List[Class[_]] = memoize(subTypes, _type)(resolve)
 
-  case class DefinitionInfo(ref:Option[String], jsonObjectFormatVisitor: Option[JsonObjectFormatVisitor])
+    def polymorphismInfo(_type:JavaType)(resolve: => Option[PolymorphismInfo]):Option[PolymorphismInfo] = memoize(polymorphismInfos, _type)(resolve)
+  }
 
   // Class that manages creating new definitions or getting $refs to existing definitions
-  class DefinitionsHandler() {
-    private var class2Ref = Map[JavaType, String]()
+  // If definitionWriter is specified, each definition is handed to it (and forgotten) as soon as it is finished,
+  // instead of being kept in the final definitions-node
+  // If dependencies is specified, all types visited are recorded in it
+  class DefinitionsHandler(fragmentStore:Option[DefinitionFragmentStore] = None, definitionWriter:Option[(String, ObjectNode) => Unit] = None,
+                           dependencies:Option[SchemaDependencies] = None) {
+    private val class2Ref = mutable.HashMap[TypeKey, String]()
+    private val takenRefs = mutable.HashSet[String]()
+    // For each definition-name: the retryCount used for the last definition created with this name.
+    // Since refs are never released, there are no free refs with a lower retryCount
+    private val lastRetryCount = mutable.HashMap[String, Int]()
     private val definitionsNode = JsonNodeFactory.instance.objectNode()
 
+    case class DefinitionInProgress(level:Int, _type:JavaType)
+
+    // The definitions we're currently building, innermost first. Used to keep track of which definitions references which.
+    private var definitionsInProgress = List[DefinitionInProgress]()
+
+    // All types referenced directly from each definition built (not spliced in) by this handler - in reverse order
+    private val definitionReferences = mutable.HashMap[TypeKey, List[JavaType]]()
+
 
     case class WorkInProgress(typeInProgress:JavaType, nodeInProgress:ObjectNode)
 
@@ -407,33 +905,43 @@ class JsonSchemaGenerator
       workInProgressStack = workInProgressStack.tail
     }
 
-    def extractTypeName(_type:JavaType) : String = {
-      // use JsonTypeName annotation if present
-      val annotation = _type.getRawClass.getDeclaredAnnotation(classOf[JsonTypeName])
-      Option(annotation).flatMap( a => Option(a.value())).filter(_.nonEmpty)
-        .getOrElse( _type.getRawClass.getSimpleName )
-    }
-
-    def getDefinitionName (_type:JavaType) : String = {
-      val baseName = if (config.useTypeIdForDefinitionName) _type.getRawClass.getTypeName else extractTypeName(_type)
+    def getDefinitionName (_type:JavaType) : String = definitionName(_type)
 
-      if (_type.hasGenericTypes) {
-        val containedTypes = Range(0, _type.containedTypeCount()).map(_type.containedType)
-        val typeNames = containedTypes.map(getDefinitionName).mkString(",")
-        s"$baseName($typeNames)"
-      } else {
-        baseName
+    // Returns (shortRef, longRef, retryCount)
+    private def findFreeRef(definitionName:String, isTaken:String => Boolean):(String, String, Int) = {
+      var retryCount = lastRetryCount.getOrElse(definitionName, 0)
+      def shortRef = if (retryCount == 0) definitionName else definitionName + "_" + retryCount
+      while( isTaken("#/definitions/" + shortRef)) {
+        retryCount = retryCount + 1
       }
+      (shortRef, "#/definitions/" + shortRef, retryCount)
+    }
+
+    private def addRef(_type:JavaType, longRef:String):Unit = {
+      class2Ref.put(TypeKey(_type), longRef)
+      takenRefs.add(longRef)
     }
 
     // Either creates new definitions or return $ref to existing one
-    def getOrCreateDefinition(_type:JavaType)(objectDefinitionBuilder:(ObjectNode) => Option[JsonObjectFormatVisitor]):DefinitionInfo = {
+    // level is the level of the MyJsonFormatVisitorWrapper asking for the definition
+    def getOrCreateDefinition(_type:JavaType, level:Int)(objectDefinitionBuilder:(ObjectNode) => Option[JsonObjectFormatVisitor]):DefinitionInfo = {
+
+      // Definitions we started building on this level (or deeper) must be finished by now
+      val (finished, stillInProgress) = definitionsInProgress.span(_.level >= level)
+      definitionsInProgress = stillInProgress
+      finished.foreach(d => definitionFinished(d._type))
+      definitionsInProgress.headOption.filter(_._type != _type).foreach {
+        d =>
+          val key = TypeKey(d._type)
+          definitionReferences.put(key, _type :: definitionReferences(key))
+      }
 
-      class2Ref.get(_type) match {
+      class2Ref.get(TypeKey(_type)) match {
         case Some(ref) =>
 
           workInProgress match {
             case None =>
+              generationListener.foreach(_.definitionReused(_type, ref))
               DefinitionInfo(Some(ref), None)
 
             case Some(w) =>
@@ -443,19 +951,21 @@ class JsonSchemaGenerator
               DefinitionInfo(None, objectDefinitionBuilder(w.nodeInProgress))
           }
 
+        case None if fragmentStore.isDefined && spliceFromFragmentStore(_type) =>
+          // Finished definition found in the fragmentStore
+          val ref = class2Ref.get(TypeKey(_type))
+          generationListener.foreach(l => ref.foreach(l.definitionReused(_type, _)))
+          DefinitionInfo(ref, None)
+
         case None =>
 
           // new one - must build it
-          var retryCount = 0
-          val definitionName = getDefinitionName(_type)
-          var shortRef = definitionName
-          var longRef = "#/definitions/" + definitionName
-          while( class2Ref.values.toList.contains(longRef)) {
-            retryCount = retryCount + 1
-            shortRef = definitionName + "_" + retryCount
-            longRef = "#/definitions/" + definitionName + "_" + retryCount
-          }
-          class2Ref = class2Ref + (_type -> longRef)
+          val name = getDefinitionName(_type)
+          val (shortRef, longRef, retryCount) = findFreeRef(name, takenRefs.contains)
+          addRef(_type, longRef)
+          lastRetryCount.put(name, retryCount)
+          definitionsInProgress = DefinitionInProgress(level, _type) :: definitionsInProgress
+          definitionReferences.put(TypeKey(_type), List())
 
           // create definition
           val node = JsonNodeFactory.instance.objectNode()
@@ -469,14 +979,97 @@ class JsonSchemaGenerator
 
           workInProgress = None
 
-          DefinitionInfo(Some(longRef), jsonObjectFormatVisitor)
+          DefinitionInfo(Some(longRef), jsonObjectFormatVisitor, created = true)
       }
     }
 
+    // Tries to add the finished definition for _type - and all definitions it references - from the fragmentStore.
+    // Only succeeds if this gives exactly the same result as building them, including the names of the definitions.
+    private def spliceFromFragmentStore(_type:JavaType):Boolean = {
+      val store = fragmentStore.get
+      val planned = mutable.HashMap[TypeKey, String]()
+      val plannedRefs = mutable.HashSet[String]()
+      var plan = List[(JavaType, DefinitionFragment)]()
+
+      def isTaken(longRef:String):Boolean = takenRefs.contains(longRef) || plannedRefs.contains(longRef)
+
+      // Visits the fragments in the same order as they would have been built
+      def planFragment(t:JavaType):Boolean = store.get(config, t).exists {
+        fragment =>
+          val longRef = "#/definitions/" + fragment.shortRef
+          findFreeRef(getDefinitionName(t), isTaken)._2 == longRef && {
+            planned.put(TypeKey(t), longRef)
+            plannedRefs.add(longRef)
+            plan = (t, fragment) :: plan
+
+            fragment.references.forall {
+              case (referencedType, ref) =>
+                val key = TypeKey(referencedType)
+                class2Ref.get(key).orElse(planned.get(key)) match {
+                  case Some(existingRef) => existingRef == ref
+                  case None              => planFragment(referencedType) && planned(key) == ref
+                }
+            }
+          }
+      }
+
+      if (planFragment(_type)) {
+        plan.reverse.foreach {
+          case (t, fragment) =>
+            addRef(t, planned(TypeKey(t)))
+            definitionWriter match {
+              case Some(writer) => writer(fragment.shortRef, fragment.node) // Already finished - no need to copy it
+              case None         => definitionsNode.set[JsonNode](fragment.shortRef, fragment.node.deepCopy[ObjectNode]())
+            }
+        }
+        true
+      } else false
+    }
+
+    private def shortRefOf(_type:JavaType):String = class2Ref(TypeKey(_type)).substring("#/definitions/".length)
+
+    // Makes the definition for _type available for later generations
+    private def storeFragment(_type:JavaType):Unit = {
+      fragmentStore.foreach {
+        store =>
+          val shortRef = shortRefOf(_type)
+          Option(definitionsNode.get(shortRef)).filter(_ => !store.contains(config, _type)).foreach {
+            definition =>
+              val node = FrozenJsonNode.freeze(definition.asInstanceOf[ObjectNode])
+              store.put(config, _type, DefinitionFragment(shortRef, node, definitionReferences(TypeKey(_type)).reverse.map(t => (t, class2Ref(TypeKey(t))))))
+          }
+      }
+    }
+
+    private def definitionFinished(_type:JavaType):Unit = {
+      definitionWriter.foreach {
+        writer =>
+          storeFragment(_type)
+          val shortRef = shortRefOf(_type)
+          writer(shortRef, definitionsNode.remove(shortRef).asInstanceOf[ObjectNode])
+      }
+    }
+
+    // Must be called when the traversal is done
+    def finish():Unit = {
+      definitionsInProgress.foreach(d => definitionFinished(d._type))
+      definitionsInProgress = List()
+      // Makes the definitions built by this handler available for later generations
+      definitionReferences.keys.foreach(key => storeFragment(key.javaType))
+    }
+
     def getFinalDefinitionsNode():Option[ObjectNode] = {
       if (class2Ref.isEmpty) None else Some(definitionsNode)
     }
 
+    def recordType(_type:JavaType):Unit = dependencies.foreach(_.recordType(_type))
+
+    def recordType(clazz:Class[_]):Unit = dependencies.foreach(_.recordType(rootObjectMapper.constructType(clazz)))
+
+    def recordResolvedSubtypes(clazz:Class[_], subclasses:List[Class[_]]):Unit = dependencies.foreach(_.recordResolvedSubtypes(clazz, subclasses))
+
+    def recordNotPersistable():Unit = dependencies.foreach(_.persistable = false)
+
   }
 
   class MyJsonFormatVisitorWrapper
@@ -485,7 +1078,8 @@ class JsonSchemaGenerator
     level:Int = 0,
     val node: ObjectNode = JsonNodeFactory.instance.objectNode(),
     val definitionsHandler:DefinitionsHandler,
-    currentProperty:Option[BeanProperty] // This property may represent the BeanProperty when we're directly processing beneath the property
+    currentProperty:Option[BeanProperty], // This property may represent the BeanProperty when we're directly processing beneath the property
+    traversalContext:TraversalContext
   ) extends JsonFormatVisitorWrapper with MySerializerProvider {
 
     def l(s: => String): Unit = {
@@ -499,27 +1093,39 @@ class JsonSchemaGenerator
     }
 
     def createChild(childNode: ObjectNode, currentProperty:Option[BeanProperty]): MyJsonFormatVisitorWrapper = {
-      new MyJsonFormatVisitorWrapper(objectMapper, level + 1, node = childNode, definitionsHandler = definitionsHandler, currentProperty = currentProperty)
-    }
-
-    def extractDefaultValue(p: BeanProperty): Option[String] = {
-      // Prefer default-value from @JsonProperty
-      selectAnnotation(p, classOf[JsonProperty]).flatMap {
-        jsonProp =>
-          val defaultValue = jsonProp.defaultValue();
-          // Since it is default set to "", we should only use it if it is nonEmpty
-          if (defaultValue.nonEmpty) {
-            Some(defaultValue)
-          } else None
-      }.orElse {
-        // Then, look for @JsonSchemaDefault
-        selectAnnotation(p, classOf[JsonSchemaDefault]).map {
-          defaultValue =>
-            defaultValue.value()
-        }
+      new MyJsonFormatVisitorWrapper(objectMapper, level + 1, node = childNode, definitionsHandler = definitionsHandler, currentProperty = currentProperty, traversalContext = traversalContext)
+    }
+
+    // The ref of the definition created when this visitor visited an object - used to report it to generationListener
+    private var createdDefinitionRef:Option[String] = None
+
+    private def acceptJsonFormatVisitor(_type:JavaType, visitor:MyJsonFormatVisitorWrapper):Unit = {
+      definitionsHandler.recordType(_type)
+      generationListener match {
+        case None =>
+          objectMapper.acceptJsonFormatVisitor(_type, visitor)
+        case Some(listener) =>
+          val (_, nanos, selfNanos) = timed(objectMapper.acceptJsonFormatVisitor(_type, visitor))(_ => visitor.createdDefinitionRef.isDefined)
+          visitor.createdDefinitionRef.foreach(ref => listener.definitionCreated(_type, ref, nanos, selfNanos))
+      }
+    }
+
+    private def acceptJsonFormatVisitor(clazz:Class[_], visitor:MyJsonFormatVisitorWrapper):Unit = {
+      definitionsHandler.recordType(clazz)
+      generationListener match {
+        case None =>
+          objectMapper.acceptJsonFormatVisitor(clazz, visitor)
+        case Some(listener) =>
+          val (_, nanos, selfNanos) = timed(objectMapper.acceptJsonFormatVisitor(clazz, visitor))(_ => visitor.createdDefinitionRef.isDefined)
+          visitor.createdDefinitionRef.foreach(ref => listener.definitionCreated(objectMapper.constructType(clazz), ref, nanos, selfNanos))
       }
     }
 
+    // The facts about currentProperty
+    private lazy val currentPropertyFacts:Option[PropertyFacts] = currentProperty.map(propertyFacts)
+
+    def extractDefaultValue(p: BeanProperty): Option[String] = propertyFacts(p).defaultValue
+
     override def expectStringFormat(_type: JavaType) = {
       l(s"expectStringFormat - _type: ${_type}")
 
@@ -529,69 +1135,49 @@ class JsonSchemaGenerator
       case class MinAndMaxLength(minLength:Option[Int], maxLength:Option[Int])
 
       // If we have 'currentProperty', then check for annotations and insert stuff into schema.
-      currentProperty.flatMap {
-        p =>
-
-          // Look for @NotBlank
-          selectAnnotation(p, classOf[NotBlank]).map {
-            _ =>
-              // Need to write this pattern first in case we should override it with more specific @Pattern
-              node.put("pattern", "^.*\\S+.*$")
-          }
+      currentPropertyFacts.foreach {
+        facts =>
 
-          // Look for @Pattern
-          selectAnnotation(p, classOf[Pattern]).map {
+          // Look for @Pattern.List, @Pattern or @NotBlank
+          facts.pattern.foreach {
             pattern =>
-              node.put("pattern", pattern.regexp())
-          }
-
-          // Look for @Pattern.List
-          selectAnnotation(p, classOf[Pattern.List]).map {
-            patterns => {
-              val regex = patterns.value().map(_.regexp).foldLeft("^")(_ + "(?=" + _ + ")").concat(".*$")
-              node.put("pattern", regex)
-            }
+              node.put("pattern", pattern)
           }
 
-          extractDefaultValue(p).map { value =>
+          facts.defaultValue.foreach { value =>
             node.put("default", value)
           }
 
           // Look for @JsonSchemaExamples
-          selectAnnotation(p, classOf[JsonSchemaExamples]).map {
+          facts.examples.foreach {
             exampleValues =>
               val examples: ArrayNode = JsonNodeFactory.instance.arrayNode()
-              exampleValues.value().map {
+              exampleValues.foreach {
                 exampleValue => examples.add(exampleValue)
               }
-              node.set("examples", examples)
-              ()
+              node.set[JsonNode]("examples", examples)
           }
 
           // Look for @Email
-          selectAnnotation(p, classOf[Email]).map {
-            _ =>
-              node.put("format", "email")
+          if (facts.email) {
+            node.put("format", "email")
           }
 
           // Look for a @Size annotation, which should have a set of min/max properties.
-          val minAndMaxLength:Option[MinAndMaxLength] = selectAnnotation(p, classOf[Size])
+          val minAndMaxLength:Option[MinAndMaxLength] = facts.size
               .map {
-                size =>
-                  (size.min(), size.max()) match {
-                    case (0, max)                 => MinAndMaxLength(None, Some(max))
-                    case (min, Integer.MAX_VALUE) => MinAndMaxLength(Some(min), None)
-                    case (min, max)               => MinAndMaxLength(Some(min), Some(max))
-                  }
+                case (0, max)                 => MinAndMaxLength(None, Some(max))
+                case (min, Integer.MAX_VALUE) => MinAndMaxLength(Some(min), None)
+                case (min, max)               => MinAndMaxLength(Some(min), Some(max))
               }
             // Look for other annotations that don't have an explicit size, but we can infer the need to set a size for.
             .orElse {
               // If we're annotated with @NotNull, check to see if our config requires a size property to be generated.
-              if (config.useMinLengthForNotNull && (selectAnnotation(p, classOf[NotNull]).isDefined)) {
+              if (config.useMinLengthForNotNull && facts.notNull) {
                 Option(MinAndMaxLength(Some(1), None))
               }
               // Other javax.validation annotations that require a length.
-              else if (selectAnnotation(p, classOf[NotBlank]).isDefined || selectAnnotation(p, classOf[NotEmpty]).isDefined) {
+              else if (facts.notBlank || facts.notEmpty) {
                 Option(MinAndMaxLength(Some(1), None))
               }
               // No length required.
@@ -633,19 +1219,18 @@ class JsonSchemaGenerator
         }
       }
 
-      currentProperty.map {
-        p =>
+      currentPropertyFacts.foreach {
+        facts =>
           // Look for @Size
-          selectAnnotation(p, classOf[Size]).map {
-            size =>
-              node.put("minItems", size.min())
-              node.put("maxItems", size.max())
+          facts.size.foreach {
+            case (min, max) =>
+              node.put("minItems", min)
+              node.put("maxItems", max)
           }
 
           // Look for @NotEmpty
-          selectAnnotation(p, classOf[NotEmpty]).map {
-            notEmpty =>
-              node.put("minItems", 1)
+          if (facts.notEmpty) {
+            node.put("minItems", 1)
           }
       }
 
@@ -661,7 +1246,7 @@ class JsonSchemaGenerator
       new JsonArrayFormatVisitor with MySerializerProvider {
         override def itemsFormat(handler: JsonFormatVisitable, _elementType: JavaType): Unit = {
           l(s"expectArrayFormat - handler: $handler - elementType: ${_elementType} - preferredElementType: $preferredElementType")
-          objectMapper.acceptJsonFormatVisitor(tryToReMapType(preferredElementType), createChild(itemsNode, currentProperty = None))
+          acceptJsonFormatVisitor(tryToReMapType(preferredElementType), createChild(itemsNode, currentProperty = None))
         }
 
         override def itemsFormat(format: JsonFormatTypes): Unit = {
@@ -677,40 +1262,40 @@ class JsonSchemaGenerator
       node.put("type", "number")
 
       // Look for @Min, @Max, @DecimalMin, @DecimalMax => minimum, maximum
-      currentProperty.map {
-        p =>
-          selectAnnotation(p, classOf[Min]).map {
+      currentPropertyFacts.foreach {
+        facts =>
+          facts.min.foreach {
             min =>
-              node.put("minimum", min.value())
+              node.put("minimum", min)
           }
 
-          selectAnnotation(p, classOf[Max]).map {
+          facts.max.foreach {
             max =>
-              node.put("maximum", max.value())
+              node.put("maximum", max)
           }
 
-          selectAnnotation(p, classOf[DecimalMin]).map {
+          facts.decimalMin.foreach {
             decimalMin =>
-              node.put("minimum", decimalMin.value().toDouble)
+              node.put("minimum", decimalMin)
           }
 
-          selectAnnotation(p, classOf[DecimalMax]).map {
+          facts.decimalMax.foreach {
             decimalMax =>
-              node.put("maximum", decimalMax.value().toDouble)
+              node.put("maximum", decimalMax)
           }
 
-          extractDefaultValue(p).map { value =>
+          facts.defaultValue.foreach { value =>
             node.put("default", value.toInt)
           }
 
           // Look for @JsonSchemaExamples
-          Option(p.getAnnotation(classOf[JsonSchemaExamples])).map {
+          facts.examplesRegardlessOfGroups.foreach {
             exampleValues =>
               val examples: ArrayNode = JsonNodeFactory.instance.arrayNode()
-              exampleValues.value().map {
+              exampleValues.foreach {
                 exampleValue => examples.add(exampleValue)
               }
-              node.set("examples", examples)
+              node.set[JsonNode]("examples", examples)
           }
       }
 
@@ -740,31 +1325,30 @@ class JsonSchemaGenerator
       node.put("type", "integer")
 
       // Look for @Min, @Max => minimum, maximum
-      currentProperty.map {
-        p =>
-          selectAnnotation(p, classOf[Min]).map {
+      currentPropertyFacts.foreach {
+        facts =>
+          facts.min.foreach {
             min =>
-              node.put("minimum", min.value())
+              node.put("minimum", min)
           }
 
-          selectAnnotation(p, classOf[Max]).map {
+          facts.max.foreach {
             max =>
-              node.put("maximum", max.value())
+              node.put("maximum", max)
           }
 
-          extractDefaultValue(p).map { value =>
+          facts.defaultValue.foreach { value =>
             node.put("default", value.toInt)
           }
 
           // Look for @JsonSchemaExamples
-          selectAnnotation(p, classOf[JsonSchemaExamples]).map {
+          facts.examples.foreach {
             exampleValues =>
               val examples: ArrayNode = JsonNodeFactory.instance.arrayNode()
-              exampleValues.value().map {
+              exampleValues.foreach {
                 exampleValue => examples.add(exampleValue)
               }
-              node.set("examples", examples)
-              ()
+              node.set[JsonNode]("examples", examples)
           }
       }
 
@@ -790,9 +1374,9 @@ class JsonSchemaGenerator
 
       node.put("type", "boolean")
 
-      currentProperty.map {
-        p =>
-          extractDefaultValue(p).map { value =>
+      currentPropertyFacts.foreach {
+        facts =>
+          facts.defaultValue.foreach { value =>
             node.put("default", value.toBoolean)
           }
       }
@@ -819,17 +1403,14 @@ class JsonSchemaGenerator
       node.set("additionalProperties", additionalPropsObject)
 
       // If we're annotated with @NotEmpty, make sure we add a minItems of 1 to our schema here.
-      currentProperty.map { p =>
-        Option(p.getAnnotation(classOf[NotEmpty])).map {
-          notEmpty =>
-            node.put("minProperties", 1)
-        }
+      if (currentPropertyFacts.exists(_.notEmptyRegardlessOfGroups)) {
+        node.put("minProperties", 1)
       }
 
       definitionsHandler.pushWorkInProgress()
 
       val childVisitor = createChild(additionalPropsObject, None)
-      objectMapper.acceptJsonFormatVisitor(tryToReMapType(_type.getContentType), childVisitor)
+      acceptJsonFormatVisitor(tryToReMapType(_type.getContentType), childVisitor)
       definitionsHandler.popworkInProgress()
 
 
@@ -865,9 +1446,11 @@ class JsonSchemaGenerator
       }
     }
 
-    case class PolymorphismInfo(typePropertyName:String, subTypeName:String)
+    private def annotatedClass(_type:JavaType):AnnotatedClass = traversalContext.annotatedClass(_type) {
+      AnnotatedClassResolver.resolve(objectMapper.getDeserializationConfig, _type, objectMapper.getDeserializationConfig)
+    }
 
-    private def extractPolymorphismInfo(_type:JavaType):Option[PolymorphismInfo] = {
+    private def extractPolymorphismInfo(_type:JavaType):Option[PolymorphismInfo] = traversalContext.polymorphismInfo(_type) {
       val maybeBaseType = ClassUtil.findSuperTypes(_type, null, false).asScala.find { cl =>
         cl.getRawClass.isAnnotationPresent(classOf[JsonTypeInfo] )
       } orElse Option(_type.getSuperClass)
@@ -894,9 +1477,21 @@ class JsonSchemaGenerator
       }
     }
 
-    private def extractSubTypes(_type: JavaType):List[Class[_]] = {
+    def extractSubTypes(_type: JavaType):List[Class[_]] = traversalContext.subTypes(_type) {
+      generationListener match {
+        case None =>
+          resolveSubTypes(_type)
+        case Some(listener) =>
+          val start = System.nanoTime()
+          val subTypes = resolveSubTypes(_type)
+          listener.subtypesResolved(_type, subTypes, System.nanoTime() - start)
+          subTypes
+      }
+    }
+
+    private def resolveSubTypes(_type: JavaType):List[Class[_]] = {
 
-      val ac = AnnotatedClassResolver.resolve(objectMapper.getDeserializationConfig, _type, objectMapper.getDeserializationConfig)
+      val ac = annotatedClass(_type)
 
       Option(ac.getAnnotation(classOf[JsonTypeInfo])).map {
         jsonTypeInfo: JsonTypeInfo =>
@@ -921,7 +1516,9 @@ class JsonSchemaGenerator
 
             case _ =>
               // Just find all subclasses
-              config.subclassesResolver.getSubclasses(_type.getRawClass)
+              val subclasses = config.subclassesResolver.getSubclasses(_type.getRawClass)
+              definitionsHandler.recordResolvedSubtypes(_type.getRawClass, subclasses)
+              subclasses
           }
 
       }.getOrElse(List())
@@ -946,22 +1543,33 @@ class JsonSchemaGenerator
       _type
     }
 
-    // Returns the value of merge
-    private def injectFromJsonSchemaInject(a:JsonSchemaInject, thisObjectNode:ObjectNode): Boolean ={
-      // Must parse json
-      val injectJsonNode = objectMapper.readTree(a.json())
-      Option(a.jsonSupplier())
-        .flatMap(cls => Option(cls.newInstance().get()))
-        .foreach(json => merge(injectJsonNode, json))
-      if (a.jsonSupplierViaLookup().nonEmpty) {
-        val json = config.jsonSuppliers.get(a.jsonSupplierViaLookup()).getOrElse(throw new Exception(s"@JsonSchemaInject(jsonSupplierLookup='${a.jsonSupplierViaLookup()}') does not exist in config.jsonSupplierLookup-map")).get()
-        merge(injectJsonNode, json)
+    // Returns the value of merge. _type is the type of the class or property the annotation was found on
+    private def injectFromJsonSchemaInject(_type:JavaType, a:JsonSchemaInject, thisObjectNode:ObjectNode): Boolean ={
+      generationListener match {
+        case None =>
+          applyJsonSchemaInject(a, thisObjectNode)
+        case Some(listener) =>
+          val start = System.nanoTime()
+          val merged = applyJsonSchemaInject(a, thisObjectNode)
+          listener.injectApplied(_type, a, System.nanoTime() - start)
+          merged
       }
-      a.strings().foreach(v => injectJsonNode.visit(v.path(), (o, n) => o.put(n, v.value())))
-      a.ints().foreach(v => injectJsonNode.visit(v.path(), (o, n) => o.put(n, v.value())))
-      a.bools().foreach(v => injectJsonNode.visit(v.path(), (o, n) => o.put(n, v.value())))
+    }
 
-      val mergeInjectedJson: Boolean = a.merge()
+    private def applyJsonSchemaInject(a:JsonSchemaInject, thisObjectNode:ObjectNode): Boolean ={
+      val template = injectTemplate(a)
+      // The template is shared, so we must work on a copy of its json
+      val injectJsonNode = template.json.deepCopy[JsonNode]()
+      template.supplierJson.foreach {
+        json =>
+          definitionsHandler.recordNotPersistable()
+          merge(injectJsonNode, json)
+      }
+      template.values.foreach {
+        case (path, f) => injectJsonNode.visit(path, f)
+      }
+
+      val mergeInjectedJson: Boolean = template.merge
       if ( !mergeInjectedJson) {
         // Since we're not merging, we must remove all content of thisObjectNode before injecting.
         // We cannot just "replace" it with injectJsonNode, since thisObjectNode already have been added to its parent
@@ -989,14 +1597,19 @@ class JsonSchemaGenerator
         subTypes.foreach {
           subType: Class[_] =>
             l(s"polymorphism - subType: $subType")
-            val definitionInfo: DefinitionInfo = definitionsHandler.getOrCreateDefinition(objectMapper.constructType(subType)){
-              objectNode =>
+            val subJavaType = objectMapper.constructType(subType)
+            val (definitionInfo, nanos, selfNanos) = timed {
+              definitionsHandler.getOrCreateDefinition(subJavaType, level){
+                objectNode =>
 
-                val childVisitor = createChild(objectNode, currentProperty = None)
-                objectMapper.acceptJsonFormatVisitor(tryToReMapType(subType), childVisitor)
+                  val childVisitor = createChild(objectNode, currentProperty = None)
+                  acceptJsonFormatVisitor(tryToReMapType(subType), childVisitor)
 
-                None
-            }
+                  None
+              }
+            }(_.created)
+            // The subType is built while creating its definition
+            if (definitionInfo.created) generationListener.foreach(_.definitionCreated(subJavaType, definitionInfo.ref.get, nanos, selfNanos))
 
             val thisOneOfNode = JsonNodeFactory.instance.objectNode()
             thisOneOfNode.put("$ref", definitionInfo.ref.get)
@@ -1023,8 +1636,8 @@ class JsonSchemaGenerator
             thisObjectNode.put("additionalProperties", !config.failOnUnknownProperties)
 
             // If class is annotated with JsonSchemaFormat, we should add it
-            val ac = AnnotatedClassResolver.resolve(objectMapper.getDeserializationConfig, _type, objectMapper.getDeserializationConfig)
-            resolvePropertyFormat(_type, objectMapper).foreach {
+            val ac = annotatedClass(_type)
+            resolvePropertyFormat(Option(ac.getAnnotation(classOf[JsonSchemaFormat])), _type.getRawClass.getName).foreach {
               format =>
                 setFormat(thisObjectNode, format)
             }
@@ -1056,7 +1669,7 @@ class JsonSchemaGenerator
             // Optionally add JsonSchemaInject to top-level
             val renderProps:Boolean = selectAnnotation(ac, classOf[JsonSchemaInject]).map {
               a =>
-                val merged = injectFromJsonSchemaInject(a, thisObjectNode)
+                val merged = injectFromJsonSchemaInject(_type, a, thisObjectNode)
                 merged == true // Continue to render props since we merged injection
             }.getOrElse( true ) // nothing injected => of course we should render props
 
@@ -1120,13 +1733,15 @@ class JsonSchemaGenerator
                     return
                   }
 
+                  val facts:Option[PropertyFacts] = prop.map(propertyFacts)
+
                   // Need to check for Option/Optional-special-case before we know what node to use here.
                   case class PropertyNode(main: ObjectNode, meta: ObjectNode)
 
                   // Check if we should set this property as required. Primitive types MUST have a value, as does anything
                   // with a @JsonProperty that has "required" set to true. Lastly, various javax.validation annotations also
                   // make this required.
-                  val requiredProperty: Boolean = if (propertyType.getRawClass.isPrimitive || jsonPropertyRequired || validationAnnotationRequired(prop)) {
+                  val requiredProperty: Boolean = if (propertyType.getRawClass.isPrimitive || jsonPropertyRequired || facts.exists(_.validationRequired)) {
                     true
                   } else {
                     false
@@ -1187,26 +1802,23 @@ class JsonSchemaGenerator
 
                     val optionType: JavaType = resolveType(propertyType, prop, objectMapper)
 
-                    objectMapper.acceptJsonFormatVisitor(tryToReMapType(optionType), childVisitor)
+                    acceptJsonFormatVisitor(tryToReMapType(optionType), childVisitor)
 
                   } else {
-                    objectMapper.acceptJsonFormatVisitor(tryToReMapType(propertyType), childVisitor)
+                    acceptJsonFormatVisitor(tryToReMapType(propertyType), childVisitor)
                   }
 
                   // Pop back the work we were working on..
                   definitionsHandler.popworkInProgress()
 
-                  prop.flatMap(resolvePropertyFormat(_)).foreach {
+                  // Prefer format specified in annotation
+                  prop.flatMap(p => facts.get.format.orElse(config.customType2FormatMapping.get(p.getType.getRawClass.getName))).foreach {
                     format =>
                       setFormat(thisPropertyNode.main, format)
                   }
 
                   // Optionally add description
-                  prop.flatMap {
-                    p: BeanProperty =>
-                      Option(p.getAnnotation(classOf[JsonSchemaDescription])).map(_.value())
-                        .orElse(Option(p.getAnnotation(classOf[JsonPropertyDescription])).map(_.value()))
-                  }.map {
+                  facts.flatMap(_.description).map {
                     description =>
                       thisPropertyNode.meta.put("description", description)
                   }
@@ -1217,10 +1829,7 @@ class JsonSchemaGenerator
                   }
 
                   // Optionally add title
-                  prop.flatMap {
-                    p: BeanProperty =>
-                      Option(p.getAnnotation(classOf[JsonSchemaTitle]))
-                  }.map(_.value())
+                  facts.flatMap(_.title)
                     .orElse {
                       if (config.autoGenerateTitleForProperties) {
                         // We should generate 'pretty-name' based on propertyName
@@ -1233,15 +1842,12 @@ class JsonSchemaGenerator
                     }
 
                   // Optionally add options
-                  prop.flatMap {
-                    p: BeanProperty =>
-                      Option(p.getAnnotation(classOf[JsonSchemaOptions]))
-                  }.map(_.items()).foreach {
+                  facts.flatMap(_.options).foreach {
                     items =>
                       val optionsNode = getOptionsNode(thisPropertyNode.meta)
                       items.foreach {
-                        item =>
-                          optionsNode.put(item.name, item.value)
+                        case (name, value) =>
+                          optionsNode.put(name, value)
 
                       }
                   }
@@ -1249,7 +1855,7 @@ class JsonSchemaGenerator
                   // Optionally add JsonSchemaInject
                   prop.flatMap {
                     p: BeanProperty =>
-                      selectAnnotation(p, classOf[JsonSchemaInject]) match {
+                      facts.get.inject match {
                         case Some(a) => Some(a)
                         case None =>
                           // Try to look at the class itself -- Looks like this is the only way to find it if the type is Enum
@@ -1258,7 +1864,7 @@ class JsonSchemaGenerator
                       }
                   }.foreach {
                     a =>
-                      injectFromJsonSchemaInject(a, thisPropertyNode.meta)
+                      injectFromJsonSchemaInject(propertyType, a, thisPropertyNode.meta)
                   }
                 }
 
@@ -1281,11 +1887,6 @@ class JsonSchemaGenerator
                   l(s"JsonObjectFormatVisitor.property: name:${name} handler:${handler} propertyTypeHint:${propertyTypeHint}")
                   myPropertyHandler(name, propertyTypeHint, None, jsonPropertyRequired = true)
                 }
-
-                // Checks to see if a javax.validation field that makes our field required is present.
-                private def validationAnnotationRequired(prop: Option[BeanProperty]): Boolean = {
-                  prop.exists(p => selectAnnotation(p, classOf[NotNull]).isDefined || selectAnnotation(p, classOf[NotBlank]).isDefined || selectAnnotation(p, classOf[NotEmpty]).isDefined)
-                }
               })
             } else None
         }
@@ -1294,7 +1895,9 @@ class JsonSchemaGenerator
           // This is the first level - we must not use definitions
           objectBuilder(node).orNull
         } else {
-          val definitionInfo: DefinitionInfo = definitionsHandler.getOrCreateDefinition(_type)(objectBuilder)
+          val definitionInfo: DefinitionInfo = definitionsHandler.getOrCreateDefinition(_type, level)(objectBuilder)
+          // The properties are visited after we return - The definition is reported when our parent is done visiting us
+          if (definitionInfo.created) createdDefinitionRef = definitionInfo.ref
 
           definitionInfo.ref.foreach {
             r =>
@@ -1423,7 +2026,304 @@ class JsonSchemaGenerator
   def generateJsonSchema[T <: Any](javaType: JavaType, title:String, description:String): JsonNode = generateJsonSchema(javaType, Option(title), Option(description))
 
   def generateJsonSchema[T <: Any](clazz: Class[T], title:Option[String], description:Option[String]): JsonNode = {
+    generateJsonSchema(rootJavaType(clazz), title, description)
+  }
+
+  def generateJsonSchema[T <: Any](javaType: JavaType, title:Option[String], description:Option[String]): JsonNode = {
+    generateJsonSchemaUsing(javaType, title, description, new TraversalContext, definitionFragmentStore)
+  }
+
+  private def generateJsonSchemaUsing(javaType: JavaType, title:Option[String], description:Option[String],
+                                      traversalContext:TraversalContext, fragmentStore:Option[DefinitionFragmentStore]): JsonNode = {
+    schemaCache match {
+      case None =>
+        generateJsonSchemaUncached(javaType, title, description, traversalContext, fragmentStore)
+
+      case Some(cache) =>
+        val key = JsonSchemaCacheKey(javaType, title, description)
+        // The cached schema is shared between all callers, so each caller gets its own copy
+        cache.get(key).map(c => FrozenJsonNode.thaw(c.schema)).getOrElse {
+          val schema = generateJsonSchemaUncached(javaType, title, description, traversalContext, fragmentStore)
+          cache.put(key, new CachedJsonSchema(FrozenJsonNode.freeze(schema), rootObjectMapper))
+          schema
+        }
+    }
+  }
 
+  /**
+    * Generates schemas for multiple root-types in one go.
+    *
+    * Introspection of the types (annotations, subtypes and polymorphism) is done only once for all roots, and
+    * definitions built for one root are reused by the following roots. If this generator has no DefinitionFragmentStore,
+    * a temporary one is used for this batch only.
+    *
+    * The schemas are exactly the same as when calling generateJsonSchema for each type.
+    *
+    * @return the generated schema for each of the types, in the same order as javaTypes
+    */
+  def generateJsonSchemas(javaTypes:Seq[JavaType]):ListMap[JavaType, JsonNode] = {
+    val traversalContext = new TraversalContext
+    val fragmentStore = definitionFragmentStore.orElse(Some(new DefinitionFragmentStore))
+    ListMap(javaTypes.distinct.map {
+      javaType => javaType -> generateJsonSchemaUsing(javaType, None, None, traversalContext, fragmentStore)
+    }: _*)
+  }
+
+  // Java-API
+  def generateJsonSchemas(javaTypes:util.Collection[JavaType]):util.Map[JavaType, JsonNode] = {
+    toJavaMap(generateJsonSchemas(javaTypes.asScala.toList))
+  }
+
+  /**
+    * Same as generateJsonSchemas(javaTypes), but the roots are generated in parallel using executor,
+    * e.g. a ForkJoinPool.
+    *
+    * Each root is traversed separately, while introspection-results and finished definitions are shared between them.
+    * The schemas are exactly the same as when generating them sequentially.
+    */
+  def generateJsonSchemas(javaTypes:Seq[JavaType], executor:Executor):ListMap[JavaType, JsonNode] = {
+    val traversalContext = new TraversalContext
+    val fragmentStore = definitionFragmentStore.orElse(Some(new DefinitionFragmentStore))
+
+    val futures = javaTypes.distinct.map {
+      javaType =>
+        javaType -> CompletableFuture.supplyAsync(new Supplier[JsonNode] {
+          override def get(): JsonNode = generateJsonSchemaUsing(javaType, None, None, traversalContext, fragmentStore)
+        }, executor)
+    }
+
+    ListMap(futures.map {
+      case (javaType, future) =>
+        try {
+          javaType -> future.join()
+        } catch {
+          // Throw the same exception as when generating sequentially
+          case e:CompletionException if e.getCause != null => throw e.getCause
+        }
+    }: _*)
+  }
+
+  // Java-API
+  def generateJsonSchemas(javaTypes:util.Collection[JavaType], executor:Executor):util.Map[JavaType, JsonNode] = {
+    toJavaMap(generateJsonSchemas(javaTypes.asScala.toList, executor))
+  }
+
+  def generateJsonSchemaBundle(javaTypes:Seq[JavaType]):JsonSchemaBundle = generateJsonSchemaBundle(javaTypes, None, None)
+
+  // Java-API
+  def generateJsonSchemaBundle(javaTypes:util.Collection[JavaType]):JsonSchemaBundle = generateJsonSchemaBundle(javaTypes.asScala.toList, None, None)
+  // Java-API
+  def generateJsonSchemaBundle(javaTypes:util.Collection[JavaType], title:String, description:String):JsonSchemaBundle = {
+    generateJsonSchemaBundle(javaTypes.asScala.toList, Option(title), Option(description))
+  }
+
+  /**
+    * Generates one schema-document for all javaTypes, with a single definitions-section shared by all of them.
+    *
+    * Each root-type gets its own definition, named the same way as all other definitions, and the document
+    * has an anyOf with one $ref for each root-type. Use JsonSchemaBundle.rootRef to find the $ref for a specific type.
+    */
+  def generateJsonSchemaBundle(javaTypes:Seq[JavaType], title:Option[String], description:Option[String]):JsonSchemaBundle = {
+
+    val rootNode = JsonNodeFactory.instance.objectNode()
+    rootNode.put("$schema", config.jsonSchemaDraft.url)
+    title.filter(_.nonEmpty).foreach( t => rootNode.put("title", t))
+    description.foreach( d => rootNode.put("description", d))
+
+    val traversalContext = new TraversalContext
+    val definitionsHandler = new DefinitionsHandler(definitionFragmentStore)
+
+    val rootRefs = javaTypes.map(TypeKey(_)).distinct.map(_.javaType).map {
+      javaType =>
+        val rootDefinition = (ref:String) => definitionsHandler.getFinalDefinitionsNode().get.get(ref.stripPrefix("#/definitions/"))
+        val ref = generatingRoot[String](javaType, rootDefinition) {
+          // Building the root-type as a definition. If it is a plain object, the visitor combines with this definition
+          // just like when building subTypes when processing polymorphism
+          val definitionInfo = definitionsHandler.getOrCreateDefinition(javaType, 0) {
+            objectNode =>
+              val visitor = new MyJsonFormatVisitorWrapper(rootObjectMapper, level = 1, node = objectNode, definitionsHandler = definitionsHandler,
+                currentProperty = None, traversalContext = traversalContext)
+              // A polymorphic root only refers to the definitions of its subTypes - there is nothing to combine
+              val polymorphic = visitor.extractSubTypes(javaType).nonEmpty
+              if (polymorphic) definitionsHandler.pushWorkInProgress()
+              rootObjectMapper.acceptJsonFormatVisitor(javaType, visitor)
+              if (polymorphic) definitionsHandler.popworkInProgress()
+              None
+          }
+          definitionInfo.ref.get
+        }
+        javaType -> ref
+    }
+
+    definitionsHandler.finish()
+
+    val anyOfArrayNode = JsonNodeFactory.instance.arrayNode()
+    rootRefs.foreach {
+      case (_, ref) =>
+        anyOfArrayNode.addObject().put("$ref", ref)
+    }
+    rootNode.set[JsonNode]("anyOf", anyOfArrayNode)
+
+    definitionsHandler.getFinalDefinitionsNode().foreach {
+      definitionsNode => rootNode.set[JsonNode]("definitions", definitionsNode)
+    }
+
+    JsonSchemaBundle(rootNode, rootRefs.toList)
+  }
+
+  private def toJavaMap(schemas:ListMap[JavaType, JsonNode]):util.Map[JavaType, JsonNode] = {
+    val result = new util.LinkedHashMap[JavaType, JsonNode]()
+    schemas.foreach {
+      case (javaType, schema) => result.put(javaType, schema)
+    }
+    result
+  }
+
+  private def cachedJsonSchema(cache:JsonSchemaCache, javaType: JavaType, title:Option[String], description:Option[String]): CachedJsonSchema = {
+    val key = JsonSchemaCacheKey(javaType, title, description)
+    cache.get(key).getOrElse {
+      val schema = FrozenJsonNode.freeze(generateJsonSchemaUncached(javaType, title, description))
+      cache.put(key, new CachedJsonSchema(schema, rootObjectMapper))
+    }
+  }
+
+  // Generates a read-only schema - See FrozenJsonNode. When using schemaCache, the cached schema is returned without copying it
+  def generateFrozenJsonSchema[T <: Any](clazz: Class[T]): JsonNode = generateFrozenJsonSchema(clazz, None, None)
+  def generateFrozenJsonSchema[T <: Any](javaType: JavaType): JsonNode = generateFrozenJsonSchema(javaType, None, None)
+
+  // Java-API
+  def generateFrozenJsonSchema[T <: Any](clazz: Class[T], title:String, description:String): JsonNode = generateFrozenJsonSchema(clazz, Option(title), Option(description))
+  // Java-API
+  def generateFrozenJsonSchema[T <: Any](javaType: JavaType, title:String, description:String): JsonNode = generateFrozenJsonSchema(javaType, Option(title), Option(description))
+
+  def generateFrozenJsonSchema[T <: Any](clazz: Class[T], title:Option[String], description:Option[String]): JsonNode = {
+    generateFrozenJsonSchema(rootJavaType(clazz), title, description)
+  }
+
+  def generateFrozenJsonSchema[T <: Any](javaType: JavaType, title:Option[String], description:Option[String]): JsonNode = {
+    schemaCache match {
+      case None =>
+        FrozenJsonNode.freeze(generateJsonSchemaUncached(javaType, title, description))
+
+      case Some(cache) =>
+        cachedJsonSchema(cache, javaType, title, description).schema
+    }
+  }
+
+  // Generates the schema serialized as UTF-8 using rootObjectMapper. When using schemaCache, the serialized schema is cached as well.
+  def generateJsonSchemaBytes[T <: Any](clazz: Class[T]): ByteBuffer = generateJsonSchemaBytes(clazz, None, None)
+  def generateJsonSchemaBytes[T <: Any](javaType: JavaType): ByteBuffer = generateJsonSchemaBytes(javaType, None, None)
+
+  // Java-API
+  def generateJsonSchemaBytes[T <: Any](clazz: Class[T], title:String, description:String): ByteBuffer = generateJsonSchemaBytes(clazz, Option(title), Option(description))
+  // Java-API
+  def generateJsonSchemaBytes[T <: Any](javaType: JavaType, title:String, description:String): ByteBuffer = generateJsonSchemaBytes(javaType, Option(title), Option(description))
+
+  def generateJsonSchemaBytes[T <: Any](clazz: Class[T], title:Option[String], description:Option[String]): ByteBuffer = {
+    generateJsonSchemaBytes(rootJavaType(clazz), title, description)
+  }
+
+  def generateJsonSchemaBytes[T <: Any](javaType: JavaType, title:Option[String], description:Option[String]): ByteBuffer = {
+    val bytes = schemaCache match {
+      case None        => rootObjectMapper.writeValueAsBytes(generateJsonSchemaUncached(javaType, title, description))
+      case Some(cache) => cachedJsonSchema(cache, javaType, title, description).utf8Bytes
+    }
+    ByteBuffer.wrap(bytes).asReadOnlyBuffer()
+  }
+
+  // Same as generateJsonSchemaBytes, but compressed using gzip
+  def generateJsonSchemaGzipBytes[T <: Any](clazz: Class[T]): ByteBuffer = generateJsonSchemaGzipBytes(clazz, None, None)
+  def generateJsonSchemaGzipBytes[T <: Any](javaType: JavaType): ByteBuffer = generateJsonSchemaGzipBytes(javaType, None, None)
+
+  // Java-API
+  def generateJsonSchemaGzipBytes[T <: Any](clazz: Class[T], title:String, description:String): ByteBuffer = generateJsonSchemaGzipBytes(clazz, Option(title), Option(description))
+  // Java-API
+  def generateJsonSchemaGzipBytes[T <: Any](javaType: JavaType, title:String, description:String): ByteBuffer = generateJsonSchemaGzipBytes(javaType, Option(title), Option(description))
+
+  def generateJsonSchemaGzipBytes[T <: Any](clazz: Class[T], title:Option[String], description:Option[String]): ByteBuffer = {
+    generateJsonSchemaGzipBytes(rootJavaType(clazz), title, description)
+  }
+
+  def generateJsonSchemaGzipBytes[T <: Any](javaType: JavaType, title:Option[String], description:Option[String]): ByteBuffer = {
+    val bytes = schemaCache match {
+      case None        => CachedJsonSchema.gzip(rootObjectMapper.writeValueAsBytes(generateJsonSchemaUncached(javaType, title, description)))
+      case Some(cache) => cachedJsonSchema(cache, javaType, title, description).gzipBytes
+    }
+    ByteBuffer.wrap(bytes).asReadOnlyBuffer()
+  }
+
+  // Writes the schema as UTF-8 to out. See writeJsonSchema(javaType, jsonGenerator, title, description)
+  def writeJsonSchema[T <: Any](clazz: Class[T], out:OutputStream): Unit = writeJsonSchema(rootJavaType(clazz), out)
+
+  def writeJsonSchema[T <: Any](javaType: JavaType, out:OutputStream): Unit = {
+    val jsonGenerator = rootObjectMapper.writer().createGenerator(out, JsonEncoding.UTF8)
+    try {
+      writeJsonSchema(javaType, jsonGenerator, None, None)
+    } finally {
+      jsonGenerator.close()
+    }
+  }
+
+  // Java-API
+  def writeJsonSchema[T <: Any](clazz: Class[T], jsonGenerator:JsonGenerator, title:String, description:String): Unit = writeJsonSchema(clazz, jsonGenerator, Option(title), Option(description))
+  // Java-API
+  def writeJsonSchema[T <: Any](javaType: JavaType, jsonGenerator:JsonGenerator, title:String, description:String): Unit = writeJsonSchema(javaType, jsonGenerator, Option(title), Option(description))
+
+  def writeJsonSchema[T <: Any](clazz: Class[T], jsonGenerator:JsonGenerator, title:Option[String], description:Option[String]): Unit = {
+    writeJsonSchema(rootJavaType(clazz), jsonGenerator, title, description)
+  }
+
+  /**
+    * Writes the schema to jsonGenerator while generating it.
+    *
+    * Each definition is written as soon as it is finished, so only the definitions currently being built are kept in
+    * memory. The result is the same schema as generateJsonSchema() gives, except that "definitions" is written before
+    * the other root-properties, and that the definitions may come in a different order.
+    *
+    * schemaCache is not used. jsonGenerator is flushed, but not closed.
+    */
+  def writeJsonSchema[T <: Any](javaType: JavaType, jsonGenerator:JsonGenerator, title:Option[String], description:Option[String]): Unit = {
+
+    generatingRoot[ObjectNode](javaType, rootNode => rootNode) {
+      val rootNode = createRootNode(javaType, title, description)
+
+      jsonGenerator.writeStartObject()
+
+      var definitionsStarted = false
+      val definitionWriter = (shortRef:String, definition:ObjectNode) => {
+        if (!definitionsStarted) {
+          jsonGenerator.writeFieldName("definitions")
+          jsonGenerator.writeStartObject()
+          definitionsStarted = true
+        }
+        jsonGenerator.writeFieldName(shortRef)
+        rootObjectMapper.writeTree(jsonGenerator, definition)
+      }
+
+      val definitionsHandler = new DefinitionsHandler(definitionFragmentStore, Some(definitionWriter))
+      val rootVisitor = new MyJsonFormatVisitorWrapper(rootObjectMapper, node = rootNode, definitionsHandler = definitionsHandler, currentProperty = None, traversalContext = new TraversalContext)
+
+      rootObjectMapper.acceptJsonFormatVisitor(javaType, rootVisitor)
+
+      definitionsHandler.finish()
+
+      if (definitionsStarted) {
+        jsonGenerator.writeEndObject()
+      }
+
+      rootNode.fields().asScala.foreach {
+        e =>
+          jsonGenerator.writeFieldName(e.getKey)
+          rootObjectMapper.writeTree(jsonGenerator, e.getValue)
+      }
+
+      jsonGenerator.writeEndObject()
+      jsonGenerator.flush()
+      rootNode
+    }
+  }
+
+  private def rootJavaType(clazz: Class[_]): JavaType = {
 
     def tryToReMapType(originalClass: Class[_]):Class[_] = {
       config.classTypeReMapping.get(originalClass).map {
@@ -1437,13 +2337,10 @@ class JsonSchemaGenerator
 
     val clazzToUse = tryToReMapType(clazz)
 
-    val javaType = rootObjectMapper.constructType(clazzToUse)
-
-    generateJsonSchema(javaType, title, description)
-
+    rootObjectMapper.constructType(clazzToUse)
   }
 
-  def generateJsonSchema[T <: Any](javaType: JavaType, title:Option[String], description:Option[String]): JsonNode = {
+  private def createRootNode(javaType: JavaType, title:Option[String], description:Option[String]): ObjectNode = {
 
     val rootNode = JsonNodeFactory.instance.objectNode()
 
@@ -1471,27 +2368,118 @@ class JsonSchemaGenerator
         // If root class is annotated with @JsonSchemaDescription, it will later override this description
     }
 
+    rootNode
+  }
 
-    val definitionsHandler = new DefinitionsHandler
-    val rootVisitor = new MyJsonFormatVisitorWrapper(rootObjectMapper, node = rootNode, definitionsHandler = definitionsHandler, currentProperty = None)
+  private lazy val persistentConfigHash = PersistentJsonSchemaCache.configHash(config)
+
+  // Not cached in schemaCache - but when using persistentSchemaCache, the stored schema is used if it is still valid
+  private def generateJsonSchemaUncached(javaType: JavaType, title:Option[String], description:Option[String],
+                                         traversalContext:TraversalContext = new TraversalContext,
+                                         fragmentStore:Option[DefinitionFragmentStore] = definitionFragmentStore): ObjectNode = {
+    persistentSchemaCache match {
+      case None =>
+        generateJsonSchemaNow(javaType, title, description, traversalContext, fragmentStore, None)
+
+      case Some(cache) =>
+        val key = s"${javaType.toCanonical}\n${title.getOrElse("")}\n${description.getOrElse("")}\n$persistentConfigHash"
+        cache.get(key, javaType.getRawClass.getClassLoader, config.subclassesResolver).getOrElse {
+          // Not reusing fragments or introspection-results, since all involved types must be visited to be recorded
+          val dependencies = new SchemaDependencies(javaType.getRawClass.getClassLoader)
+          dependencies.recordType(javaType)
+          val schema = generateJsonSchemaNow(javaType, title, description, new TraversalContext, None, Some(dependencies))
+          cache.put(key, schema, dependencies)
+          schema
+        }
+    }
+  }
 
+  private def generateJsonSchemaNow(javaType: JavaType, title:Option[String], description:Option[String],
+                                    traversalContext:TraversalContext, fragmentStore:Option[DefinitionFragmentStore],
+                                    dependencies:Option[SchemaDependencies]): ObjectNode = {
 
-    rootObjectMapper.acceptJsonFormatVisitor(javaType, rootVisitor)
+    generatingRoot[ObjectNode](javaType, rootNode => rootNode) {
+      val rootNode = createRootNode(javaType, title, description)
 
-    definitionsHandler.getFinalDefinitionsNode().foreach {
-      definitionsNode => rootNode.set("definitions", definitionsNode)
-      ()
+      val definitionsHandler = new DefinitionsHandler(fragmentStore, dependencies = dependencies)
+      val rootVisitor = new MyJsonFormatVisitorWrapper(rootObjectMapper, node = rootNode, definitionsHandler = definitionsHandler, currentProperty = None, traversalContext = traversalContext)
+
+
+      rootObjectMapper.acceptJsonFormatVisitor(javaType, rootVisitor)
+
+      definitionsHandler.finish()
+
+      definitionsHandler.getFinalDefinitionsNode().foreach {
+        definitionsNode => rootNode.set("definitions", definitionsNode)
+        ()
+      }
+
+      rootNode
     }
+  }
 
-    rootNode
+  // Notifies generationListener when generating the root-type starts, and when it is finished or has failed.
+  // schema gives the schema to report from the result
+  private def generatingRoot[T](javaType:JavaType, schema:T => JsonNode)(generate: => T):T = {
+    generationListener match {
+      case None =>
+        generate
+      case Some(listener) =>
+        listener.rootStarted(javaType)
+        val start = System.nanoTime()
+        val (result, nanos, selfNanos) = try {
+          timed(generate)(_ => true)
+        } catch {
+          case e:Throwable =>
+            listener.rootFailed(javaType, e, System.nanoTime() - start)
+            throw e
+        }
+        listener.rootFinished(javaType, schema(result), nanos, selfNanos)
+        result
+    }
+  }
+
+  // For each timing in progress on this thread (innermost first): the time spent in the reported timings nested in it
+  private val nestedNanos = new ThreadLocal[List[Long]] {
+    override def initialValue():List[Long] = List()
+  }
 
+  // Runs generate, and returns its result with the time spent (nanos), and the time spent without the reported timings
+  // nested in it (selfNanos) - Only measured when there is a generationListener.
+  // reported tells if the timing is reported. If not, the time of the timings nested in it counts for the enclosing timing
+  private def timed[T](generate: => T)(reported: T => Boolean):(T, Long, Long) = {
+    if (generationListener.isEmpty) return (generate, 0L, 0L)
+
+    nestedNanos.set(0L :: nestedNanos.get())
+    val start = System.nanoTime()
+    val result = try {
+      generate
+    } catch {
+      case e:Throwable =>
+        endTiming(start, reported = false)
+        throw e
+    }
+    val (nanos, selfNanos) = endTiming(start, reported(result))
+    (result, nanos, selfNanos)
+  }
+
+  private def endTiming(start:Long, reported:Boolean):(Long, Long) = {
+    val nanos = System.nanoTime() - start
+    val timings = nestedNanos.get()
+    val nested = timings.head
+    nestedNanos.set(timings.tail match {
+      case enclosing :: rest => (enclosing + (if (reported) nanos else nested)) :: rest
+      case Nil               => Nil
+    })
+    (nanos, nanos - nested)
   }
 
   implicit class JsonNodeExtension(o:JsonNode) {
-    def visit(path: String, f: (ObjectNode, String) => Unit) = {
+    def visit(path: String, f: (ObjectNode, String) => Unit):Unit = visit(path.split('/'), f)
+
+    def visit(split: Array[String], f: (ObjectNode, String) => Unit):Unit = {
       var p = o
 
-      val split = path.split('/')
       for (name <- split.dropRight(1)) {
         p = Option(p.get(name)).getOrElse(p.asInstanceOf[ObjectNode].putObject(name))
       }
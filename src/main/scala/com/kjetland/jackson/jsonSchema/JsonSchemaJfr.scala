@@ -0,0 +1,113 @@
+package com.kjetland.jackson.jsonSchema
+
+import com.fasterxml.jackson.databind.{JavaType, JsonNode}
+import com.kjetland.jackson.jsonSchema.annotations.JsonSchemaInject
+import com.kjetland.jackson.jsonSchema.jfr._
+
+import scala.collection.JavaConverters._
+
+/**
+  * JDK Flight Recorder-events for schema generation - See the events in the jfr-package.
+  *
+  * Enable them using JsonSchemaGenerator.withJfrEvents(). The ClassGraph-scans done by SubclassesResolverImpl are always
+  * recorded. JFR is only available on JDK 8u262 and later - on other JVMs no events are emitted, and the event-classes
+  * are never loaded.
+  */
+object JsonSchemaJfr {
+
+  val available:Boolean = try {
+    Class.forName("jdk.jfr.Event")
+    true
+  } catch {
+    case _:ClassNotFoundException | _:LinkageError => false
+  }
+
+  // A listener emitting the generation-events, or None if JFR is not available
+  def listener:Option[JsonSchemaGenerationListener] = if (available) Some(new JsonSchemaJfrListener) else None
+
+  private[jsonSchema] def recordScan(packages:List[String])(scan: => (SubtypeIndex, ScanReport)):(SubtypeIndex, ScanReport) = {
+    if (available) JsonSchemaJfrListener.recordScan(packages)(scan) else scan
+  }
+}
+
+// Only loaded when JFR is available
+private[jsonSchema] class JsonSchemaJfrListener extends JsonSchemaGenerationListener {
+
+  // The roots being generated on this thread - innermost first
+  private val roots = new ThreadLocal[List[SchemaGenerationEvent]] {
+    override def initialValue():List[SchemaGenerationEvent] = List()
+  }
+
+  override def rootStarted(javaType:JavaType):Unit = {
+    val event = new SchemaGenerationEvent
+    event.begin()
+    roots.set(event :: roots.get())
+  }
+
+  override def rootFinished(javaType:JavaType, schema:JsonNode, nanos:Long, selfNanos:Long):Unit = {
+    val event = popRoot()
+    event.end()
+    if (event.shouldCommit()) {
+      event.typeName = javaType.toCanonical
+      event.nodeCount = JsonSchemaJfrListener.countNodes(schema)
+      event.commit()
+    }
+  }
+
+  // No event is recorded for a failed root - but it must be removed, so the outer root gets the following definitions
+  override def rootFailed(javaType:JavaType, error:Throwable, nanos:Long):Unit = popRoot()
+
+  private def popRoot():SchemaGenerationEvent = {
+    val event = roots.get().head
+    roots.set(roots.get().tail)
+    event
+  }
+
+  override def definitionCreated(javaType:JavaType, ref:String, nanos:Long, selfNanos:Long):Unit = {
+    roots.get().headOption.foreach(root => root.definitionsCreated = root.definitionsCreated + 1)
+    val event = new DefinitionEvent
+    if (event.isEnabled) {
+      event.typeName = javaType.toCanonical
+      event.ref = ref
+      event.buildTime = nanos
+      event.selfTime = selfNanos
+      event.commit()
+    }
+  }
+
+  override def definitionReused(javaType:JavaType, ref:String):Unit = {
+    roots.get().headOption.foreach(root => root.definitionsReused = root.definitionsReused + 1)
+  }
+
+  override def injectApplied(javaType:JavaType, annotation:JsonSchemaInject, nanos:Long):Unit = {
+    val event = new InjectEvent
+    if (event.isEnabled) {
+      event.typeName = javaType.toCanonical
+      event.merge = annotation.merge()
+      event.jsonSupplierViaLookup = annotation.jsonSupplierViaLookup()
+      event.injectTime = nanos
+      event.commit()
+    }
+  }
+}
+
+private[jsonSchema] object JsonSchemaJfrListener {
+
+  private def countNodes(node:JsonNode):Int = 1 + node.elements().asScala.map(countNodes).sum
+
+  def recordScan(packages:List[String])(scan: => (SubtypeIndex, ScanReport)):(SubtypeIndex, ScanReport) = {
+    val event = new ClassGraphScanEvent
+    event.begin()
+    val result = scan
+    event.end()
+    if (event.shouldCommit()) {
+      val report = result._2
+      event.packages = packages.mkString(",")
+      event.classpathElements = report.classpathElements.size
+      event.classes = report.classes
+      event.subtypeIndexSize = report.subtypeIndexSize
+      event.commit()
+    }
+    result
+  }
+}
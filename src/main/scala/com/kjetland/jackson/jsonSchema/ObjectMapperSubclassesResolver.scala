@@ -0,0 +1,89 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.io.{BufferedReader, InputStreamReader}
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ConcurrentHashMap
+
+import com.fasterxml.jackson.databind.ObjectMapper
+
+import scala.collection.JavaConverters._
+
+/**
+  * SubclassesResolver which never scans the classpath: It uses the subtypes registered in objectMapper
+  * (objectMapper.registerSubtypes(...), modules and @JsonSubTypes).
+  *
+  * @param useServiceLoader if true, the classes listed in META-INF/services/[class-name] (as used by ServiceLoader)
+  *                         are also used. The classes are only loaded - not instantiated
+  * @param classLoader used to find and load the ServiceLoader-classes
+  * @param fallback used for classes unknown to objectMapper (neither having registered subtypes nor being one),
+  *                 e.g. SubclassesResolverImpl
+  *
+  * The subclasses are resolved once for each class, so subtypes must be registered before the resolver is used.
+  */
+case class ObjectMapperSubclassesResolver
+(
+  objectMapper:ObjectMapper,
+  useServiceLoader:Boolean = false,
+  classLoader:ClassLoader = classOf[ObjectMapperSubclassesResolver].getClassLoader,
+  fallback:Option[SubclassesResolver] = None
+) extends SubclassesResolver {
+
+  def this(objectMapper:ObjectMapper) = this(objectMapper, false, classOf[ObjectMapperSubclassesResolver].getClassLoader, None)
+
+  def withServiceLoader(classLoader:ClassLoader):ObjectMapperSubclassesResolver = {
+    this.copy(useServiceLoader = true, classLoader = classLoader)
+  }
+
+  def withFallback(fallback:SubclassesResolver):ObjectMapperSubclassesResolver = {
+    this.copy(fallback = Option(fallback))
+  }
+
+  private val subclasses = new ConcurrentHashMap[Class[_], List[Class[_]]]()
+
+  override def getSubclasses(clazz: Class[_]): List[Class[_]] = {
+    Option(subclasses.get(clazz)).getOrElse {
+      val found = (registeredSubtypes(clazz) ++ serviceLoaderSubtypes(clazz))
+        .filter(c => clazz.isAssignableFrom(c) && c != clazz)
+        .distinct
+      val result = if (found.isEmpty && !isRegisteredSubtype(clazz)) {
+        fallback.map(_.getSubclasses(clazz)).getOrElse(List())
+      } else found
+      subclasses.putIfAbsent(clazz, result)
+      result
+    }
+  }
+
+  private def registeredSubtypes(clazz:Class[_]):List[Class[_]] = {
+    val config = objectMapper.getDeserializationConfig
+    val ac = config.introspectClassAnnotations(clazz).getClassInfo
+    objectMapper.getSubtypeResolver.collectAndResolveSubtypesByClass(config, ac).asScala.toList.map(_.getType)
+  }
+
+  private def isRegisteredSubtype(clazz:Class[_]):Boolean = {
+    superTypes(clazz).exists {
+      superType => registeredSubtypes(superType).contains(clazz) || serviceLoaderSubtypes(superType).contains(clazz)
+    }
+  }
+
+  private def superTypes(clazz:Class[_]):List[Class[_]] = {
+    val direct:List[Class[_]] = (Option(clazz.getSuperclass).toList ++ clazz.getInterfaces.toList).filter(_ != classOf[Object])
+    (direct ++ direct.flatMap(superTypes)).distinct
+  }
+
+  private def serviceLoaderSubtypes(clazz:Class[_]):List[Class[_]] = {
+    if (!useServiceLoader) return List()
+
+    classLoader.getResources("META-INF/services/" + clazz.getName).asScala.toList.flatMap {
+      url =>
+        val reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))
+        try {
+          Iterator.continually(reader.readLine()).takeWhile(_ != null)
+            .map(_.takeWhile(_ != '#').trim)
+            .filter(_.nonEmpty)
+            .toList
+        } finally {
+          reader.close()
+        }
+    }.distinct.map(className => Class.forName(className, false, classLoader))
+  }
+}
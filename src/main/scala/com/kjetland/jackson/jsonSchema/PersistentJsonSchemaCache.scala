@@ -0,0 +1,275 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.io.File
+import java.net.URL
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+import com.fasterxml.jackson.databind.node.{JsonNodeFactory, ObjectNode}
+import com.fasterxml.jackson.databind.{JavaType, JsonNode, ObjectMapper}
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+case class PersistentJsonSchemaCacheStats(hitCount:Long, missCount:Long, staleCount:Long)
+
+/**
+  * Disk-backed cache of generated schemas, so they are reused between restarts.
+  *
+  * Each schema is stored together with a fingerprint of the bytecode of all classes involved when generating it
+  * (the root-type, the types of all properties, definitions and subtypes - and their super-types), and the
+  * subclasses found using the SubclassesResolver. The schema is only reused if none of them have changed.
+  * The JsonSchemaConfig, the type, title and description are part of the key - See configHash for which config-changes
+  * are noticed.
+  *
+  * The ObjectMapper-configuration (modules, mixins, registered subtypes) is not part of the key - use a separate
+  * directory for each ObjectMapper-configuration.
+  * Schemas using @JsonSchemaInject with a jsonSupplier are never stored, since their content is only known at runtime.
+  *
+  * An entry is only read and validated once in each JVM - it is validated again if the entry or the class-files it
+  * depends on are replaced.
+  */
+class PersistentJsonSchemaCache(val directory:File) {
+
+  private val objectMapper = new ObjectMapper()
+
+  // Bytecode-fingerprint for each class-file, keyed by its url, last-modified and size - so a class-file (or jar)
+  // replaced by a hot-reload is read again
+  private val fingerprints = new ConcurrentHashMap[String, String]()
+
+  // The entries which have been validated, by key
+  private val validated = new ConcurrentHashMap[String, PersistentJsonSchemaCache.Validated]()
+
+  private val hitCount = new AtomicLong()
+  private val missCount = new AtomicLong()
+  private val staleCount = new AtomicLong()
+
+  def stats:PersistentJsonSchemaCacheStats = PersistentJsonSchemaCacheStats(hitCount.get(), missCount.get(), staleCount.get())
+
+  private def file(key:String):File = new File(directory, PersistentJsonSchemaCache.sha256(key) + ".json")
+
+  // Returns the stored schema for key, if none of its dependencies have changed
+  private[jsonSchema] def get(key:String, classLoader:ClassLoader, subclassesResolver:SubclassesResolver):Option[ObjectNode] = {
+    val f = file(key)
+    if (!f.exists()) {
+      missCount.incrementAndGet()
+      return None
+    }
+
+    // Validated earlier, using the same SubclassesResolver, and nothing has been replaced since
+    Option(validated.get(key)).filter(v => (v.subclassesResolver eq subclassesResolver) && v.unchanged(f)) match {
+      case Some(v) =>
+        hitCount.incrementAndGet()
+        return Some(v.schema.deepCopy())
+      case None =>
+    }
+
+    val entry = try {
+      objectMapper.readTree(f)
+    } catch {
+      case _:Exception => JsonNodeFactory.instance.objectNode() // Corrupt - it is overwritten with a new one
+    }
+
+    val entryStamp = PersistentJsonSchemaCache.stamp(f)
+    val loaders = PersistentJsonSchemaCache.loaders(classLoader)
+    val classFiles = entry.path("classes").fields().asScala.toList.map(e => (e.getKey, e.getValue.asText(), classFile(e.getKey, loaders)))
+
+    def classesUnchanged:Boolean = classFiles.forall {
+      case (_, expected, url) => url.map(fingerprint).getOrElse("-") == expected
+    }
+
+    def subtypesUnchanged:Boolean = entry.path("subtypes").fields().asScala.forall {
+      e =>
+        loadClass(e.getKey, loaders).exists {
+          clazz => subclassesResolver.getSubclasses(clazz).map(_.getName) == e.getValue.elements().asScala.map(_.asText()).toList
+        }
+    }
+
+    if (entry.path("key").asText() == key && entry.path("schema").isObject && classesUnchanged && subtypesUnchanged) {
+      hitCount.incrementAndGet()
+      val schema = entry.get("schema").asInstanceOf[ObjectNode]
+      // Only remembered when all class-files can be checked cheaply
+      val classStamps = classFiles.map { case (_, _, url) => url.flatMap(u => PersistentJsonSchemaCache.stamp(u).map(u -> _)) }
+      if (classStamps.forall(_.isDefined)) {
+        validated.put(key, PersistentJsonSchemaCache.Validated(schema.deepCopy(), entryStamp, classStamps.flatten, subclassesResolver))
+      }
+      Some(schema)
+    } else {
+      staleCount.incrementAndGet()
+      None
+    }
+  }
+
+  private[jsonSchema] def put(key:String, schema:ObjectNode, dependencies:SchemaDependencies):Unit = {
+    if (!dependencies.persistable) return
+
+    val entry = objectMapper.createObjectNode()
+    entry.put("key", key)
+
+    // Using the same ClassLoaders as when the entry is validated by get
+    val loaders = PersistentJsonSchemaCache.loaders(dependencies.classLoader)
+    val classes = entry.putObject("classes")
+    dependencies.classesWithSuperTypes.foreach {
+      clazz => classes.put(clazz.getName, fingerprint(clazz.getName, loaders))
+    }
+
+    val subtypes = entry.putObject("subtypes")
+    dependencies.resolvedSubtypes.foreach {
+      case (clazz, subclasses) =>
+        val array = subtypes.putArray(clazz.getName)
+        subclasses.foreach(c => array.add(c.getName))
+    }
+
+    entry.set[JsonNode]("schema", schema)
+
+    // Other JVMs never reads a half-written entry
+    AtomicFiles.write(file(key))(out => objectMapper.writeValue(out, entry))
+    validated.remove(key)
+  }
+
+  private[jsonSchema] def fingerprint(className:String, loaders:List[ClassLoader]):String = {
+    classFile(className, loaders).map(fingerprint).getOrElse("-") // No bytecode found, e.g. when the class no longer exists
+  }
+
+  private def classFile(className:String, loaders:List[ClassLoader]):Option[URL] = {
+    val resourceName = className.replace('.', '/') + ".class"
+    loaders.iterator.map(_.getResource(resourceName)).collectFirst { case url if url != null => url }
+  }
+
+  private def fingerprint(url:URL):String = {
+    val memoKey = PersistentJsonSchemaCache.stamp(url).map(url.toString + " " + _)
+    memoKey.flatMap(k => Option(fingerprints.get(k))).getOrElse {
+      val in = url.openStream()
+      val digest = MessageDigest.getInstance("SHA-256")
+      try {
+        val buffer = new Array[Byte](8192)
+        Iterator.continually(in.read(buffer)).takeWhile(_ != -1).foreach(n => digest.update(buffer, 0, n))
+      } finally {
+        in.close()
+      }
+      val fp = PersistentJsonSchemaCache.hex(digest.digest())
+      memoKey.foreach(fingerprints.putIfAbsent(_, fp))
+      fp
+    }
+  }
+
+  private def loadClass(className:String, loaders:List[ClassLoader]):Option[Class[_]] = {
+    loaders.iterator.map {
+      loader =>
+        try {
+          Some(Class.forName(className, false, loader))
+        } catch {
+          case _:ClassNotFoundException => None
+        }
+    }.collectFirst { case Some(c) => c }
+  }
+}
+
+object PersistentJsonSchemaCache {
+
+  // A validated entry, and the stamps of the files it was validated against
+  private case class Validated(schema:ObjectNode, entryStamp:String, classStamps:List[(URL, String)], subclassesResolver:SubclassesResolver) {
+    def unchanged(entry:File):Boolean = stamp(entry) == entryStamp && classStamps.forall { case (url, s) => stamp(url).contains(s) }
+  }
+
+  // Where the classes a schema depends on are looked up - both when storing and when validating it
+  private def loaders(classLoader:ClassLoader):List[ClassLoader] = {
+    List(classLoader, Thread.currentThread().getContextClassLoader, classOf[PersistentJsonSchemaCache].getClassLoader).filter(_ != null).distinct
+  }
+
+  private[jsonSchema] def sha256(s:String):String = hex(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)))
+
+  private def hex(bytes:Array[Byte]):String = bytes.map(b => "%02x".format(b & 0xff)).mkString
+
+  private def stamp(file:File):String = s"${file.lastModified()} ${file.length()}"
+
+  // Last-modified and size of the file (or jar) containing url - None if it is not a local file, so it is never memoized.
+  // The classes of the runtime-image (jrt) never change while running
+  private def stamp(url:URL):Option[String] = url.getProtocol match {
+    case "file" =>
+      val f = try {
+        new File(url.toURI)
+      } catch {
+        case _:Exception => new File(url.getPath)
+      }
+      Some(stamp(f))
+    case "jrt" => Some("jrt")
+    case "jar" =>
+      val path = url.getPath
+      val separator = path.indexOf("!/")
+      if (separator < 0) None else {
+        try {
+          stamp(new URL(path.substring(0, separator)))
+        } catch {
+          case _:java.net.MalformedURLException => None
+        }
+      }
+    case _ => None
+  }
+
+  /**
+    * A hash of config which is the same in every JVM (unlike config.hashCode). Values without a stable representation
+    * (suppliers, resolvers etc) are represented by their class-name, unless they are case classes - so changing their
+    * configuration (e.g. what a jsonSupplier returns, or a custom SubclassesResolver's settings) does not change the
+    * hash. Use a separate directory for each such configuration.
+    */
+  def configHash(config:JsonSchemaConfig):String = sha256(stableString(config))
+
+  private def stableString(value:Any):String = value match {
+    case null                           => "null"
+    case s:String                       => "\"" + s + "\""
+    case c:Class[_]                     => c.getName
+    case e:java.lang.Enum[_]            => e.name()
+    case a:Array[_]                     => a.map(stableString).mkString("[", ",", "]")
+    case m:scala.collection.Map[_, _]   => m.toList.map { case (k, v) => stableString(k) + "->" + stableString(v) }.sorted.mkString("{", ",", "}")
+    case s:scala.collection.Set[_]      => s.toList.map(stableString).sorted.mkString("{", ",", "}")
+    case s:scala.collection.Seq[_]      => s.map(stableString).mkString("[", ",", "]")
+    case b:Boolean                      => b.toString
+    case n:Number                       => n.toString
+    case p:Product                      => p.productPrefix + p.productIterator.map(stableString).mkString("(", ",", ")")
+    case other                          => other.getClass.getName
+  }
+}
+
+/**
+  * The classes involved when generating a schema - Only recorded when using PersistentJsonSchemaCache.
+  *
+  * @param classLoader the ClassLoader of the root-type, used (with the context- and library-ClassLoader) to find the
+  *                    class-files when storing and when validating the schema
+  */
+private[jsonSchema] class SchemaDependencies(val classLoader:ClassLoader) {
+  private val seen = mutable.HashSet[TypeKey]()
+  private val classes = mutable.LinkedHashSet[Class[_]]()
+  val resolvedSubtypes = mutable.LinkedHashMap[Class[_], List[Class[_]]]()
+
+  // False if the schema depends on something only known at runtime
+  var persistable = true
+
+  def recordType(javaType:JavaType):Unit = {
+    if (seen.add(TypeKey(javaType))) {
+      classes.add(javaType.getRawClass)
+      javaType.getBindings.getTypeParameters.asScala.foreach(recordType)
+      Option(javaType.getContentType).foreach(recordType)
+      Option(javaType.getKeyType).foreach(recordType)
+    }
+  }
+
+  def recordResolvedSubtypes(clazz:Class[_], subclasses:List[Class[_]]):Unit = {
+    resolvedSubtypes.put(clazz, subclasses)
+    subclasses.foreach(classes.add)
+  }
+
+  // A class' properties also depends on its super-types
+  def classesWithSuperTypes:List[Class[_]] = {
+    def withSuperTypes(c:Class[_]):List[Class[_]] = {
+      val direct = (Option(c.getSuperclass).toList ++ c.getInterfaces.toList).filter(_ != classOf[Object])
+      c :: direct.flatMap(withSuperTypes)
+    }
+    classes.toList.map(c => if (c.isArray) c.getComponentType else c)
+      .filterNot(_.isPrimitive)
+      .flatMap(withSuperTypes)
+      .distinct
+  }
+}
@@ -0,0 +1,154 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.io.{File, OutputStreamWriter, PrintWriter}
+import java.net.URL
+import java.nio.charset.StandardCharsets
+
+import com.fasterxml.jackson.databind.{JavaType, JsonNode}
+import com.kjetland.jackson.jsonSchema.annotations.JsonSchemaPrecompile
+import org.slf4j.LoggerFactory
+
+import scala.collection.JavaConverters._
+
+/**
+  * Serves the schemas generated at build-time by PrecompiledJsonSchemaWriter (classes annotated with @JsonSchemaPrecompile),
+  * and falls back to generating the schema using generator for all other types.
+  *
+  * The precompiled schemas are only used if they were generated using the JsonSchemaConfig-preset equal to
+  * generator.config - otherwise a warning is logged, and the schemas are generated using generator.
+  * The ObjectMapper is not recorded, so generator should use one configured the same way as the one used by
+  * PrecompiledJsonSchemaWriter.
+  * Only used for types without type-parameters, and when no title/description is given.
+  */
+class PrecompiledJsonSchemas(val generator:JsonSchemaGenerator, classLoader:ClassLoader) {
+
+  def this(generator:JsonSchemaGenerator) = this(generator, classOf[PrecompiledJsonSchemas].getClassLoader)
+
+  private val schemas = new SchemaResourceCache(generator.rootObjectMapper)
+
+  // The schema-resources generated using generator.config, by class-name
+  private val resources:Map[String, URL] = classLoader.getResources(PrecompiledJsonSchemas.indexResourceName).asScala.toList.flatMap {
+    url =>
+      val lines = SchemaResources.readLines(url)
+      val configName = lines.collectFirst { case line if line.startsWith("# config=") => line.stripPrefix("# config=") }
+      if (configName.flatMap(JsonSchemaConfig.presets.get).contains(generator.config)) {
+        // The schemas are next to the index
+        lines.filterNot(_.startsWith("#")).map(className => className -> new URL(url, s"$className.json"))
+      } else {
+        LoggerFactory.getLogger(getClass).warn(s"Not using the precompiled schemas listed in $url - they were generated" +
+          s" using the JsonSchemaConfig-preset '${configName.getOrElse("")}', which is not the generator's config")
+        List()
+      }
+  }.toMap
+
+  // The precompiled schema for clazz - without copying it
+  def precompiledSchema(clazz:Class[_]):Option[JsonNode] = {
+    schemas.schema(clazz.getName)(resources.get(clazz.getName))
+  }
+
+  def isPrecompiled(clazz:Class[_]):Boolean = precompiledSchema(clazz).isDefined
+
+  def generateJsonSchema[T <: Any](clazz: Class[T]): JsonNode = {
+    precompiledSchema(clazz).map(FrozenJsonNode.thaw).getOrElse(generator.generateJsonSchema(clazz))
+  }
+
+  def generateJsonSchema[T <: Any](javaType: JavaType): JsonNode = {
+    val precompiled = if (javaType.getBindings.isEmpty) precompiledSchema(javaType.getRawClass) else None
+    precompiled.map(FrozenJsonNode.thaw).getOrElse(generator.generateJsonSchema(javaType))
+  }
+}
+
+object PrecompiledJsonSchemas {
+
+  // Written by the annotation-processor: The names of all classes annotated with @JsonSchemaPrecompile
+  val classListResourceName = "META-INF/mbknor-jackson-jsonSchema/precompile"
+
+  // Written by PrecompiledJsonSchemaWriter: One line for each precompiled class, after the line "# config=<preset>"
+  val indexResourceName = "META-INF/mbknor-jackson-jsonSchema/schemas/index"
+
+  def schemaResourceName(className:String):String = s"META-INF/mbknor-jackson-jsonSchema/schemas/$className.json"
+
+  // All classes listed by the annotation-processor
+  def listedClassNames(classLoader:ClassLoader):List[String] = {
+    classLoader.getResources(classListResourceName).asScala.toList.flatMap(SchemaResources.readLines).distinct
+  }
+}
+
+/**
+  * Writes the schemas served by PrecompiledJsonSchemas. Meant to be run at build-time, after compiling, with the
+  * compiled classes on the classpath:
+  *
+  *   PrecompiledJsonSchemaWriter <resource-directory> [--config <preset>] [--object-mapper <factory-class>] [<class-name> ...]
+  *
+  * Without class-names, the classes listed by the annotation-processor are used. The preset (default
+  * vanillaJsonSchemaDraft4) is recorded in the index, so PrecompiledJsonSchemas can check it against its generator.
+  * The factory-class is a java.util.function.Supplier[ObjectMapper] - without it, a plain ObjectMapper (with the
+  * Scala-module, if it is on the classpath) is used.
+  */
+object PrecompiledJsonSchemaWriter {
+
+  // generator.config must be one of JsonSchemaConfig.presets
+  def write(resourceDirectory:File, classes:List[Class[_]], generator:JsonSchemaGenerator):List[File] = {
+    val configName = JsonSchemaConfig.presets.collectFirst { case (name, config) if config == generator.config => name }.getOrElse {
+      throw new IllegalArgumentException(s"The generator's config is not one of the JsonSchemaConfig-presets ${JsonSchemaConfig.presets.keys.toList.sorted.mkString(", ")}")
+    }
+    val sortedClasses = classes.distinct.sortBy(_.getName)
+    val schemaFiles = SchemaResources.write(resourceDirectory, sortedClasses, generator, PrecompiledJsonSchemas.schemaResourceName)
+
+    val indexFile = new File(resourceDirectory, PrecompiledJsonSchemas.indexResourceName)
+    AtomicFiles.write(indexFile) {
+      stream =>
+        val out = new PrintWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))
+        out.println(s"# config=$configName")
+        sortedClasses.foreach(clazz => out.println(clazz.getName))
+        out.flush()
+    }
+
+    indexFile :: schemaFiles
+  }
+
+  // Writes the schemas for all classes listed by the annotation-processor, which are still annotated with @JsonSchemaPrecompile
+  def write(resourceDirectory:File, classLoader:ClassLoader, generator:JsonSchemaGenerator):List[File] = {
+    val classes:List[Class[_]] = PrecompiledJsonSchemas.listedClassNames(classLoader).flatMap {
+      className =>
+        try {
+          Some[Class[_]](Class.forName(className, false, classLoader)).filter(_.isAnnotationPresent(classOf[JsonSchemaPrecompile]))
+        } catch {
+          case _:ClassNotFoundException =>
+            LoggerFactory.getLogger(getClass).warn(s"Skipping $className - the class no longer exists")
+            None
+        }
+    }
+    write(resourceDirectory, classes, generator)
+  }
+
+  def main(args:Array[String]):Unit = {
+    if (args.isEmpty) {
+      System.err.println("Usage: PrecompiledJsonSchemaWriter <resource-directory> [--config <preset>] [--object-mapper <factory-class>] [<class-name> ...]")
+      System.exit(1)
+    }
+
+    var configName = "vanillaJsonSchemaDraft4"
+    var objectMapperFactory:Option[String] = None
+    var classNames = List[String]()
+    var rest = args.tail.toList
+    while (rest.nonEmpty) {
+      rest match {
+        case "--config" :: name :: tail        => configName = name; rest = tail
+        case "--object-mapper" :: name :: tail => objectMapperFactory = Some(name); rest = tail
+        case className :: tail                 => classNames = classNames :+ className; rest = tail
+        case Nil                               =>
+      }
+    }
+
+    val resourceDirectory = new File(args.head)
+    val classLoader = Thread.currentThread().getContextClassLoader
+    val generator = new JsonSchemaGenerator(SchemaResources.objectMapper(objectMapperFactory, classLoader), JsonSchemaConfig.preset(configName))
+    val files = if (classNames.nonEmpty) {
+      write(resourceDirectory, classNames.map(Class.forName(_, false, classLoader)), generator)
+    } else {
+      write(resourceDirectory, classLoader, generator)
+    }
+    files.foreach(file => println(s"Wrote $file"))
+  }
+}
@@ -0,0 +1,79 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.io.{BufferedReader, File, InputStreamReader}
+import java.net.URL
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ConcurrentHashMap
+import java.util.function.Supplier
+
+import com.fasterxml.jackson.databind.{JsonNode, Module, ObjectMapper}
+
+/**
+  * Schemas packaged as resources: One JSON-file for each class, and a list-resource with a line for each class.
+  * Used by PrecompiledJsonSchemas and JsonSchemaCatalog, which only differ in where the resources are, and how the
+  * classes are selected.
+  */
+private[jsonSchema] object SchemaResources {
+
+  // The trimmed non-empty lines of a list-resource
+  def readLines(url:URL):List[String] = {
+    val reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))
+    try {
+      Iterator.continually(reader.readLine()).takeWhile(_ != null).map(_.trim).filter(_.nonEmpty).toList
+    } finally {
+      reader.close()
+    }
+  }
+
+  // Writes the schema for each class to the resource named by resourceName(class-name)
+  def write(resourceDirectory:File, classes:List[Class[_]], generator:JsonSchemaGenerator, resourceName:String => String):List[File] = {
+    val writer = generator.rootObjectMapper.writerWithDefaultPrettyPrinter()
+    classes.map {
+      clazz =>
+        val file = new File(resourceDirectory, resourceName(clazz.getName))
+        AtomicFiles.write(file)(out => writer.writeValue(out, generator.generateJsonSchema(clazz)))
+        file
+    }
+  }
+
+  /**
+    * The ObjectMapper used when writing the schemas at build-time: Created by factoryClassName (a
+    * java.util.function.Supplier[ObjectMapper] with a no-arg constructor, registering the application's modules and
+    * mix-ins) - or a plain ObjectMapper with the Scala-module registered, if it is on the classpath.
+    */
+  def objectMapper(factoryClassName:Option[String], classLoader:ClassLoader):ObjectMapper = {
+    factoryClassName match {
+      case Some(className) =>
+        Class.forName(className, true, classLoader).getDeclaredConstructor().newInstance().asInstanceOf[Supplier[ObjectMapper]].get()
+      case None =>
+        val objectMapper = new ObjectMapper()
+        scalaModule(classLoader).foreach(objectMapper.registerModule)
+        objectMapper
+    }
+  }
+
+  private def scalaModule(classLoader:ClassLoader):Option[Module] = {
+    try {
+      Some(Class.forName("com.fasterxml.jackson.module.scala.DefaultScalaModule", true, classLoader).getDeclaredConstructor().newInstance().asInstanceOf[Module])
+    } catch {
+      case _:ClassNotFoundException | _:LinkageError => None
+    }
+  }
+}
+
+// The schemas read from resources - each is read once, and frozen since they are shared (See FrozenJsonNode)
+private[jsonSchema] class SchemaResourceCache(objectMapper:ObjectMapper) {
+
+  private val schemas = new ConcurrentHashMap[String, Option[JsonNode]]()
+
+  def schema(name:String)(resource: => Option[URL]):Option[JsonNode] = {
+    Option(schemas.get(name)).getOrElse {
+      val schema = resource.map {
+        url =>
+          val in = url.openStream()
+          try FrozenJsonNode.freeze(objectMapper.readTree(in)) finally in.close()
+      }
+      Option(schemas.putIfAbsent(name, schema)).getOrElse(schema)
+    }
+  }
+}
@@ -0,0 +1,318 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.io._
+import java.util
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.concurrent.{CompletableFuture, CompletionException, ConcurrentHashMap}
+
+import io.github.classgraph.{ClassInfo, ScanResult}
+import org.slf4j.LoggerFactory
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+/**
+  * Immutable index from the name of a class to the names of all its subclasses - or from the name of an interface
+  * to the names of all classes implementing it - as found by a classpath-scan.
+  *
+  * Only names are kept, so the ScanResult can be closed as soon as the index is built.
+  * Classes without any subclasses are not in the index. The subclasses of classes outside the scan (e.g. a base-class
+  * from a library, extended by classes in the scanned packages) are in the index - except for java.lang.Object.
+  */
+class SubtypeIndex private (private val subtypeNames:Map[String, Array[String]]) {
+
+  def getSubtypeNames(className:String):List[String] = subtypeNames.get(className).map(_.toList).getOrElse(List())
+
+  def size:Int = subtypeNames.size
+
+  // The header, then one line for each class: the class-name followed by the names of its subclasses, separated by space.
+  // The trailer tells a complete index from a truncated one
+  def write(out:OutputStream):Unit = {
+    val writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))
+    writer.write(SubtypeIndex.header)
+    writer.newLine()
+    subtypeNames.toList.sortBy(_._1).foreach {
+      case (className, subtypes) =>
+        writer.write((className :: subtypes.toList).mkString(" "))
+        writer.newLine()
+    }
+    writer.write(SubtypeIndex.trailer)
+    writer.newLine()
+    writer.flush()
+  }
+}
+
+object SubtypeIndex {
+
+  // Where SubtypeIndexWriter puts the index, and where IndexedSubclassesResolver looks for it
+  val resourceName = "META-INF/mbknor-jackson-jsonSchema/subtype-index"
+
+  private[jsonSchema] val header = "# mbknor-jackson-jsonSchema subtype-index"
+  private[jsonSchema] val trailer = "# end"
+
+  // Part of the key of cached indexes - Must be changed when the index or the way it is built changes
+  private[jsonSchema] val formatVersion = 3
+
+  private val className = """[\p{javaJavaIdentifierStart}][\p{javaJavaIdentifierPart}]*(\.[\p{javaJavaIdentifierStart}][\p{javaJavaIdentifierPart}]*)*""".r
+
+  // Built from the supertypes of each scanned class, since the scanned classes may extend classes outside the scan
+  def apply(scanResult:ScanResult):SubtypeIndex = {
+    val subtypeNames = scanResult.getAllStandardClasses.asScala.toList.flatMap {
+      classInfo => supertypeNames(classInfo).map(_ -> classInfo.getName)
+    }.groupBy(_._1).map {
+      case (supertype, entries) => supertype -> entries.map(_._2).distinct.sorted.toArray
+    }
+
+    new SubtypeIndex(subtypeNames)
+  }
+
+  // All superclasses and implemented interfaces, also when they are not scanned themselves
+  private def supertypeNames(classInfo:ClassInfo):Set[String] = {
+    def interfaces(c:ClassInfo):List[ClassInfo] = c.getInterfaces.asScala.toList.flatMap(i => i :: interfaces(i))
+    val superclasses = classInfo.getSuperclasses.asScala.toList
+    (superclasses ++ (classInfo :: superclasses).flatMap(interfaces)).map(_.getName).toSet - "java.lang.Object"
+  }
+
+  // Throws IOException if it is not a complete index written by write
+  def read(in:InputStream):SubtypeIndex = {
+    val reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))
+    val lines = Iterator.continually(reader.readLine()).takeWhile(_ != null).map(_.trim).filter(_.nonEmpty).toList
+
+    if (lines.headOption.forall(_ != header)) throw new IOException(s"Not a subtype-index - the first line is not '$header'")
+    if (lines.last != trailer) throw new IOException(s"Incomplete subtype-index - the last line is not '$trailer'")
+
+    val subtypeNames = lines.tail.filter(!_.startsWith("#")).map {
+      line =>
+        val names = line.split(' ')
+        if (names.length < 2 || !names.forall(className.pattern.matcher(_).matches())) {
+          throw new IOException(s"Malformed line in subtype-index: $line")
+        }
+        names.head -> names.tail
+    }.toMap
+
+    new SubtypeIndex(subtypeNames)
+  }
+
+  // Combines indexes from different parts of the classpath (e.g. one from each jar)
+  def merge(indexes:Seq[SubtypeIndex]):SubtypeIndex = {
+    val subtypeNames = indexes.flatMap(_.subtypeNames).groupBy(_._1).map {
+      case (className, entries) => className -> entries.flatMap(_._2).distinct.sorted.toArray
+    }
+    new SubtypeIndex(subtypeNames)
+  }
+}
+
+/**
+  * SubclassesResolver looking up subclasses in a SubtypeIndex. The loaded subclasses are remembered for each class.
+  */
+trait SubtypeIndexResolver extends SubclassesResolver {
+
+  def subtypeIndex:SubtypeIndex
+
+  private val subclasses = new ConcurrentHashMap[Class[_], List[Class[_]]]()
+
+  override def getSubclasses(clazz: Class[_]): List[Class[_]] = {
+    Option(subclasses.get(clazz)).getOrElse {
+      val result = subtypeIndex.getSubtypeNames(clazz.getName).map(loadClass(_, clazz))
+      subclasses.putIfAbsent(clazz, result)
+      result
+    }
+  }
+
+  // Subclasses are normally loaded by the same ClassLoader as the class itself (or one of its children)
+  private def loadClass(className:String, superType:Class[_]):Class[_] = {
+    val classLoaders = List(superType.getClassLoader, Thread.currentThread().getContextClassLoader, getClass.getClassLoader).filter(_ != null).distinct
+    classLoaders.iterator.map {
+      classLoader =>
+        try {
+          Some(Class.forName(className, false, classLoader))
+        } catch {
+          case _:ClassNotFoundException => None
+        }
+    }.collectFirst { case Some(c) => c }.getOrElse(throw new Exception(s"Unable to load $className - subclass of ${superType.getName}"))
+  }
+}
+
+/**
+  * SubclassesResolver which never scans the classpath: It uses the subtype-indexes written at build-time by
+  * SubtypeIndexWriter (all resources named SubtypeIndex.resourceName). If no index is found, it falls back to scanning using fallback.
+  */
+case class IndexedSubclassesResolver
+(
+  classLoader:ClassLoader = classOf[IndexedSubclassesResolver].getClassLoader,
+  fallback:SubclassesResolverImpl = new SubclassesResolverImpl()
+) extends SubtypeIndexResolver {
+
+  def this() = this(classOf[IndexedSubclassesResolver].getClassLoader, new SubclassesResolverImpl())
+
+  lazy val subtypeIndex:SubtypeIndex = {
+    val resources = classLoader.getResources(SubtypeIndex.resourceName).asScala.toList
+    if (resources.isEmpty) {
+      LoggerFactory.getLogger(getClass).warn(s"No ${SubtypeIndex.resourceName} found on the classpath - falling back to scanning")
+      fallback.subtypeIndex
+    } else {
+      SubtypeIndex.merge(resources.map {
+        url =>
+          val in = url.openStream()
+          try SubtypeIndex.read(in) finally in.close()
+      })
+    }
+  }
+}
+
+/**
+  * Writes the subtype-index used by IndexedSubclassesResolver. Meant to be run at build-time, with the classes to index on the classpath:
+  *
+  *   SubtypeIndexWriter <resource-directory> <package-to-scan> [<package-to-scan> ...]
+  */
+object SubtypeIndexWriter {
+
+  def write(resourceDirectory:File, packagesToScan:List[String]):File = {
+    val index = SubclassesResolverImpl().withPackagesToScan(packagesToScan).subtypeIndex
+    val file = new File(resourceDirectory, SubtypeIndex.resourceName)
+    file.getParentFile.mkdirs()
+    val out = new FileOutputStream(file)
+    try index.write(out) finally out.close()
+    file
+  }
+
+  def main(args:Array[String]):Unit = {
+    if (args.length < 2) {
+      System.err.println("Usage: SubtypeIndexWriter <resource-directory> <package-to-scan> [<package-to-scan> ...]")
+      System.exit(1)
+    }
+    val file = write(new File(args.head), args.tail.toList)
+    println(s"Wrote $file")
+  }
+}
+
+/**
+  * What SubclassesResolverImpl scans - Used to identify equal scans.
+  *
+  * @param classLoader the ClassLoader scanned (in addition to the ones ClassGraph finds itself), so resolvers belonging
+  *                    to different ClassLoaders (e.g. different tenants) never share an index
+  */
+case class ScanSpec
+(
+  packagesToScan:List[String],
+  classesToScan:List[String],
+  jarsToScan:List[String],
+  jarsToReject:List[String],
+  modulesToScan:List[String],
+  scanCacheDirectory:Option[File],
+  classLoader:ClassLoader
+)
+
+/**
+  * What was found by a classpath-scan, and how long it took.
+  *
+  * @param classpathElements the jars and directories scanned
+  * @param classes the number of classes scanned
+  * @param subtypeIndexSize the number of classes having subclasses
+  */
+case class ScanReport(classpathElements:List[File], modules:List[String], classes:Int, subtypeIndexSize:Int, duration:Duration) {
+
+  // Java-API
+  def getClasspathElements:java.util.List[File] = classpathElements.asJava
+
+  override def toString: String = s"Scanned $classes classes in ${classpathElements.size} classpath-elements" +
+    s" and ${modules.size} modules in ${duration.toMillis} ms - $subtypeIndexSize classes have subclasses"
+}
+
+/**
+  * Process-wide registry of subtype-indexes, so resolvers scanning the same (e.g. copies of the same
+  * SubclassesResolverImpl used by different JsonSchemaConfigs) only scan once.
+  *
+  * Reference-counted: An index is kept as long as at least one resolver which has acquired it is not released -
+  * or until the ClassLoader of its ScanSpec is garbage-collected, since the indexes are held weakly by ClassLoader.
+  */
+object SubtypeIndexRegistry {
+
+  // The index and the report from the scan building it (None if read from disk)
+  type ScannedIndex = (SubtypeIndex, Option[ScanReport])
+
+  private class Entry(val index:CompletableFuture[ScannedIndex], var refCount:Int)
+
+  // Guarded by synchronized. The inner maps are keyed by the ScanSpec without its ClassLoader, so nothing refers to
+  // the ClassLoader strongly
+  private val entries = new util.WeakHashMap[ClassLoader, mutable.HashMap[ScanSpec, Entry]]()
+
+  private def specsFor(scanSpec:ScanSpec):mutable.HashMap[ScanSpec, Entry] = {
+    Option(entries.get(scanSpec.classLoader)).getOrElse {
+      val specs = mutable.HashMap[ScanSpec, Entry]()
+      entries.put(scanSpec.classLoader, specs)
+      specs
+    }
+  }
+
+  private def key(scanSpec:ScanSpec):ScanSpec = scanSpec.copy(classLoader = null)
+
+  private def registered(scanSpec:ScanSpec):Option[Entry] = Option(entries.get(scanSpec.classLoader)).flatMap(_.get(key(scanSpec)))
+
+  private def remove(scanSpec:ScanSpec, entry:Entry):Unit = {
+    Option(entries.get(scanSpec.classLoader)).foreach {
+      specs =>
+        if (specs.get(key(scanSpec)).exists(_ eq entry)) specs.remove(key(scanSpec))
+        if (specs.isEmpty) entries.remove(scanSpec.classLoader)
+    }
+  }
+
+  /**
+    * Returns the index registered for scanSpec - If none, it is built using build, while others asking for the same
+    * scanSpec wait for it.
+    *
+    * register is called while holding the registry's lock. If it returns true, the index is acquired, and it must be
+    * released later on - If false, the index is used without acquiring it.
+    */
+  def acquire(scanSpec:ScanSpec)(register: => Boolean)(build: => ScannedIndex):ScannedIndex = {
+    val (entry, mustBuild) = synchronized {
+      val specs = specsFor(scanSpec)
+      val (e, isNew) = specs.get(key(scanSpec)) match {
+        case Some(existing) => (existing, false)
+        case None =>
+          val created = new Entry(new CompletableFuture[ScannedIndex](), 0)
+          specs.put(key(scanSpec), created)
+          (created, true)
+      }
+      if (register) e.refCount = e.refCount + 1
+      (e, isNew)
+    }
+
+    if (mustBuild) {
+      try {
+        entry.index.complete(build)
+        // Nobody has acquired it - do not keep it
+        synchronized {
+          if (entry.refCount <= 0) remove(scanSpec, entry)
+        }
+      } catch {
+        case e:Throwable =>
+          // Make sure the next one tries again
+          synchronized {
+            remove(scanSpec, entry)
+          }
+          entry.index.completeExceptionally(e)
+      }
+    }
+
+    try {
+      entry.index.join()
+    } catch {
+      case e:CompletionException => throw e.getCause
+    }
+  }
+
+  def release(scanSpec:ScanSpec):Unit = synchronized {
+    registered(scanSpec).foreach {
+      e =>
+        e.refCount = e.refCount - 1
+        if (e.refCount <= 0) remove(scanSpec, e)
+    }
+  }
+
+  // The number of resolvers using the index for scanSpec
+  def refCount(scanSpec:ScanSpec):Int = synchronized {
+    registered(scanSpec).map(_.refCount).getOrElse(0)
+  }
+}
@@ -0,0 +1,14 @@
+package com.kjetland.jackson.jsonSchema
+
+import com.fasterxml.jackson.databind.JavaType
+
+/**
+  * Key used when indexing types.
+  *
+  * JavaType.hashCode() is the hash of the raw class plus the sum of the hashCodes of its type-parameters, so many
+  * parameterizations of a generic type collide (Map[String, Integer] and Map[Integer, String] always do). With many of
+  * them, each lookup degrades to a linear search. This key hashes the full (canonical) type instead.
+  */
+private[jsonSchema] case class TypeKey(javaType:JavaType) {
+  override val hashCode:Int = javaType.toCanonical.hashCode
+}
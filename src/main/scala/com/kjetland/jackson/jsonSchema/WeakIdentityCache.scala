@@ -0,0 +1,56 @@
+package com.kjetland.jackson.jsonSchema
+
+import java.lang.ref.{ReferenceQueue, WeakReference}
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+  * A concurrent cache comparing keys by identity, and holding them weakly - so an entry is dropped when its key
+  * (e.g. an AnnotatedMember or Annotation kept by Jackson's caches) is no longer used.
+  *
+  * Compares by identity since AnnotatedMember.equals() ignores where (and with which mix-ins) the member was resolved,
+  * and Annotation.equals()/hashCode() compares all the values using reflection.
+  * The values must not reference their keys, or the entries are never dropped.
+  */
+private[jsonSchema] class WeakIdentityCache[K <: AnyRef, V] {
+  import WeakIdentityCache.Key
+
+  private val queue = new ReferenceQueue[K]()
+  private val entries = new ConcurrentHashMap[Key[K], V]()
+
+  def getOrElseUpdate(key:K)(resolve: => V):V = {
+    expunge()
+    Option(entries.get(new Key(key, null))).getOrElse {
+      val value = resolve
+      Option(entries.putIfAbsent(new Key(key, queue), value)).getOrElse(value)
+    }
+  }
+
+  def size:Int = {
+    expunge()
+    entries.size()
+  }
+
+  // Removes the entries whose keys have been garbage collected
+  private def expunge():Unit = {
+    Iterator.continually(queue.poll()).takeWhile(_ != null).foreach(entries.remove)
+  }
+}
+
+private object WeakIdentityCache {
+
+  private class Key[K <: AnyRef](key:K, queue:ReferenceQueue[K]) extends WeakReference[K](key, queue) {
+    private val hash = System.identityHashCode(key)
+
+    override def hashCode():Int = hash
+
+    // A cleared key is only equal to itself
+    override def equals(o:Any):Boolean = o match {
+      case other:Key[_] =>
+        (other eq this) || {
+          val k = get()
+          k != null && (k eq other.get().asInstanceOf[AnyRef])
+        }
+      case _ => false
+    }
+  }
+}
@@ -1,18 +1,25 @@
 package com.kjetland.jackson.jsonSchema
 
+import java.io.File
+import java.net.URLClassLoader
+import java.nio.file.Files
 import java.time.{LocalDate, LocalDateTime, OffsetDateTime}
 import java.util
+import java.util.concurrent.{Executors, RejectedExecutionException, TimeUnit}
 import java.util.{Collections, Optional, TimeZone}
+import java.util.function.Supplier
 
 import com.fasterxml.jackson.databind.module.SimpleModule
 import com.fasterxml.jackson.databind.node.{ArrayNode, MissingNode, ObjectNode}
-import com.fasterxml.jackson.databind.{JavaType, JsonNode, ObjectMapper, SerializationFeature}
+import com.fasterxml.jackson.databind.{JavaType, JsonNode, ObjectMapper, PropertyNamingStrategies, SerializationFeature}
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module
 import com.fasterxml.jackson.datatype.joda.JodaModule
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
 import com.fasterxml.jackson.module.kotlin.KotlinModule
 import com.fasterxml.jackson.module.scala.DefaultScalaModule
 import com.github.fge.jsonschema.main.JsonSchemaFactory
+import com.kjetland.jackson.jsonSchema.annotations.{JsonSchemaInject, JsonSchemaPrecompile}
+import com.kjetland.jackson.jsonSchema.processor.JsonSchemaPrecompileProcessor
 import com.kjetland.jackson.jsonSchema.testData.GenericClass.GenericClassVoid
 import com.kjetland.jackson.jsonSchema.testData.MapLike.GenericMapLike
 import com.kjetland.jackson.jsonSchema.testData._
@@ -23,13 +30,20 @@ import com.kjetland.jackson.jsonSchema.testData.polymorphism2.{Child21, Child22,
 import com.kjetland.jackson.jsonSchema.testData.polymorphism3.{Child31, Child32, Parent3}
 import com.kjetland.jackson.jsonSchema.testData.polymorphism4.{Child41, Child42}
 import com.kjetland.jackson.jsonSchema.testData.polymorphism5.{Child51, Child52, Parent5}
-import com.kjetland.jackson.jsonSchema.testData.polymorphism6.{Child61, Parent6}
+import com.kjetland.jackson.jsonSchema.testData.polymorphism6.{Child61, Child62, Parent6}
+import com.kjetland.jackson.jsonSchema.testData.polymorphism7.{Parent7, Parent7Interface}
+import com.kjetland.jackson.jsonSchema.testData.polymorphism7.children.{Child71, Child72}
 import com.kjetland.jackson.jsonSchema.testDataScala._
 import com.kjetland.jackson.jsonSchema.testData_issue_24.EntityWrapper
+import io.github.classgraph.ClassGraph
+import javax.tools.{DiagnosticCollector, JavaFileObject, ToolProvider}
 import javax.validation.groups.Default
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
 import org.scalatest.{FunSuite, Matchers}
 
 import scala.collection.JavaConverters._
+import scala.collection.mutable
 
 class JsonSchemaGeneratorTest extends FunSuite with Matchers {
 
@@ -228,6 +242,16 @@ class JsonSchemaGeneratorTest extends FunSuite with Matchers {
     root.at(fixedRef).asInstanceOf[ObjectNode]
   }
 
+  // Runs f with a new temp-directory, which is deleted afterwards
+  def withTempDirectory[T](prefix:String)(f: File => T):T = {
+    def delete(file:File):Unit = {
+      if (file.isDirectory && !Files.isSymbolicLink(file.toPath)) Option(file.listFiles()).toList.flatten.foreach(delete)
+      file.delete()
+    }
+    val directory = Files.createTempDirectory(prefix).toFile
+    try f(directory) finally delete(directory)
+  }
+
   test("Generate scheme for plain class not using @JsonTypeInfo") {
 
     val enumList = MyEnum.values().toList.map(_.toString)
@@ -1711,6 +1735,966 @@ class JsonSchemaGeneratorTest extends FunSuite with Matchers {
     // Currently there are no differences in the generated jsonSchema other than the $schema-url
   }
 
+  test("Using JsonSchemaCache") {
+    val cache = new JsonSchemaCache(maxEntries = 2)
+    val g = jsonSchemaGenerator.withSchemaCache(cache)
+
+    val schema1 = g.generateJsonSchema(classOf[ClassNotExtendingAnything])
+    val schema2 = g.generateJsonSchema(classOf[ClassNotExtendingAnything])
+    assert(schema1 == schema2)
+    assert(schema1 == jsonSchemaGenerator.generateJsonSchema(classOf[ClassNotExtendingAnything]))
+    assert(cache.stats.hitCount == 1)
+    assert(cache.stats.missCount == 1)
+
+    // Each caller must get its own copy
+    schema1.asInstanceOf[ObjectNode].put("title", "changed")
+    assert(g.generateJsonSchema(classOf[ClassNotExtendingAnything]).at("/title").asText() == "Class Not Extending Anything")
+
+    // Title and description is part of the key
+    g.generateJsonSchema(classOf[ClassNotExtendingAnything], "t", "d")
+    assert(cache.stats.missCount == 2)
+
+    // Least recently used is evicted
+    g.generateJsonSchema(classOf[ManyPrimitives])
+    assert(cache.stats.evictionCount == 1)
+    assert(cache.size == 2)
+
+    cache.invalidate(classOf[ClassNotExtendingAnything])
+    assert(cache.size == 1)
+    cache.invalidateAll()
+    assert(cache.size == 0)
+    assert(cache.stats.weight == 0)
+  }
+
+  test("Frozen schemas") {
+    val g = jsonSchemaGenerator.withSchemaCache(new JsonSchemaCache())
+
+    val frozen = g.generateFrozenJsonSchema(classOf[PojoWithArrays])
+    assert(FrozenJsonNode.isFrozen(frozen))
+    assert(frozen == jsonSchemaGenerator.generateJsonSchema(classOf[PojoWithArrays]))
+
+    // Cached frozen schema is shared without copying
+    assert(g.generateFrozenJsonSchema(classOf[PojoWithArrays]) eq frozen)
+
+    intercept[UnsupportedOperationException] {
+      frozen.asInstanceOf[ObjectNode].put("title", "changed")
+    }
+    intercept[UnsupportedOperationException] {
+      frozen.at("/properties/stringList").asInstanceOf[ObjectNode].remove("type")
+    }
+    intercept[UnsupportedOperationException] {
+      frozen.at("/required").asInstanceOf[ArrayNode].add("x")
+    }
+    intercept[UnsupportedOperationException] {
+      frozen.fields().next().setValue(null)
+    }
+    // Not even through the iterators
+    List(frozen.fields(), frozen.elements(), frozen.fieldNames(), frozen.at("/required").elements()).foreach {
+      it =>
+        it.next()
+        intercept[UnsupportedOperationException] {
+          it.remove()
+        }
+    }
+    assert(frozen == jsonSchemaGenerator.generateJsonSchema(classOf[PojoWithArrays]))
+
+    val thawed = FrozenJsonNode.thaw(frozen)
+    assert(!FrozenJsonNode.isFrozen(thawed))
+    thawed.asInstanceOf[ObjectNode].put("title", "changed")
+    assert(g.generateJsonSchema(classOf[PojoWithArrays]) == g.generateFrozenJsonSchema(classOf[PojoWithArrays]))
+  }
+
+  test("Using DefinitionFragmentStore") {
+    val classes = List(classOf[PojoWithParent], classOf[PojoWithArrays], classOf[RecursivePojo], classOf[PojoUsingMaps],
+      classOf[Parent], classOf[EntityWrapper], classOf[GenericClassContainer], classOf[BoringContainer], classOf[Child1])
+
+    List(jsonSchemaGenerator, jsonSchemaGeneratorHTML5, jsonSchemaGeneratorWithIdsNullable).foreach {
+      plainGenerator =>
+        val store = new DefinitionFragmentStore
+        val g = plainGenerator.withDefinitionFragmentStore(store)
+
+        // Second round is generated using only fragments from the store
+        (classes ++ classes.reverse).foreach {
+          clazz =>
+            val expected = asPrettyJson(plainGenerator.generateJsonSchema(clazz), plainGenerator.rootObjectMapper)
+            assert(asPrettyJson(g.generateJsonSchema(clazz), g.rootObjectMapper) == expected)
+        }
+
+        assert(store.size > 0)
+    }
+  }
+
+  test("Schema as bytes") {
+    def toArray(buffer:java.nio.ByteBuffer):Array[Byte] = {
+      val bytes = new Array[Byte](buffer.remaining())
+      buffer.duplicate().get(bytes)
+      bytes
+    }
+
+    def gunzip(bytes:Array[Byte]):Array[Byte] = {
+      val in = new java.util.zip.GZIPInputStream(new java.io.ByteArrayInputStream(bytes))
+      val out = new java.io.ByteArrayOutputStream()
+      val buf = new Array[Byte](4096)
+      var n = in.read(buf)
+      while (n >= 0) {
+        out.write(buf, 0, n)
+        n = in.read(buf)
+      }
+      out.toByteArray
+    }
+
+    val expected = jsonSchemaGenerator.generateJsonSchema(classOf[PojoWithArrays])
+    val cache = new JsonSchemaCache()
+    val g = jsonSchemaGenerator.withSchemaCache(cache)
+
+    List(jsonSchemaGenerator, g).foreach {
+      generator =>
+        val bytes = generator.generateJsonSchemaBytes(classOf[PojoWithArrays])
+        assert(bytes.isReadOnly)
+        assert(_objectMapper.readTree(toArray(bytes)) == expected)
+
+        val gzipBytes = generator.generateJsonSchemaGzipBytes(classOf[PojoWithArrays])
+        assert(gzipBytes.isReadOnly)
+        assert(gunzip(toArray(gzipBytes)).toList == toArray(bytes).toList)
+    }
+
+    // Bytes and gzip-bytes are created from the same cached schema
+    assert(cache.size == 1)
+    assert(cache.stats.hitCount == 1)
+  }
+
+  test("Writing schema to JsonGenerator") {
+    val classes = List(classOf[ClassNotExtendingAnything], classOf[PojoWithParent], classOf[RecursivePojo], classOf[PojoUsingMaps],
+      classOf[Parent], classOf[EntityWrapper], classOf[GenericClassContainer], classOf[BoringContainer], classOf[Child1])
+
+    List(jsonSchemaGenerator, jsonSchemaGeneratorHTML5, jsonSchemaGeneratorWithIdsNullable,
+      jsonSchemaGenerator.withDefinitionFragmentStore(new DefinitionFragmentStore)).foreach {
+      g =>
+        (classes ++ classes).foreach {
+          clazz =>
+            val out = new java.io.ByteArrayOutputStream()
+            g.writeJsonSchema(clazz, out)
+            assert(_objectMapper.readTree(out.toByteArray) == g.generateJsonSchema(clazz))
+        }
+    }
+
+    val writer = new java.io.StringWriter()
+    val jsonGenerator = _objectMapper.getFactory.createGenerator(writer)
+    jsonSchemaGenerator.writeJsonSchema(classOf[PojoWithParent], jsonGenerator, "My title", "My description")
+    assert(_objectMapper.readTree(writer.toString) == jsonSchemaGenerator.generateJsonSchema(classOf[PojoWithParent], "My title", "My description"))
+  }
+
+  test("Generating multiple schemas in one batch") {
+    val classes = List(classOf[PojoWithParent], classOf[PojoWithArrays], classOf[RecursivePojo], classOf[PojoUsingMaps],
+      classOf[Parent], classOf[EntityWrapper], classOf[GenericClassContainer], classOf[BoringContainer], classOf[Child1], classOf[Parent])
+
+    List(jsonSchemaGenerator, jsonSchemaGeneratorHTML5, jsonSchemaGeneratorWithIdsNullable).foreach {
+      g =>
+        val javaTypes = classes.map(c => g.rootObjectMapper.constructType(c))
+        val schemas = g.generateJsonSchemas(javaTypes)
+
+        assert(schemas.keys.toList == javaTypes.distinct)
+        schemas.foreach {
+          case (javaType, schema) =>
+            assert(asPrettyJson(schema, g.rootObjectMapper) == asPrettyJson(g.generateJsonSchema(javaType), g.rootObjectMapper))
+        }
+
+        // Java-API
+        assert(g.generateJsonSchemas(javaTypes.asJava).asScala == schemas)
+    }
+  }
+
+  test("Generating multiple schemas in parallel") {
+    val classes = List(classOf[PojoWithParent], classOf[PojoWithArrays], classOf[RecursivePojo], classOf[PojoUsingMaps],
+      classOf[Parent], classOf[EntityWrapper], classOf[GenericClassContainer], classOf[BoringContainer], classOf[Child1],
+      classOf[Child2], classOf[ManyPrimitives], classOf[PojoUsingValidation], classOf[Parent2], classOf[Parent3])
+
+    val pool = new java.util.concurrent.ForkJoinPool(4)
+    try {
+      List(jsonSchemaGenerator, jsonSchemaGeneratorHTML5, jsonSchemaGeneratorWithIdsNullable).foreach {
+        g =>
+          val javaTypes = classes.map(c => g.rootObjectMapper.constructType(c))
+          def pretty(schemas:Map[JavaType, JsonNode]) = schemas.toList.map { case (t, schema) => (t, asPrettyJson(schema, g.rootObjectMapper)) }
+          val expected = pretty(g.generateJsonSchemas(javaTypes))
+
+          for (_ <- 0 until 10) {
+            assert(pretty(g.generateJsonSchemas(javaTypes, pool)) == expected)
+          }
+      }
+    } finally {
+      pool.shutdown()
+    }
+  }
+
+  test("Bundle of multiple schemas sharing definitions") {
+    val javaTypes = List(classOf[PojoWithParent], classOf[Parent], classOf[Child1], classOf[RecursivePojo], classOf[ManyPrimitives])
+      .map(c => _objectMapper.constructType(c))
+    val bundle = jsonSchemaGenerator.generateJsonSchemaBundle(javaTypes, Some("My bundle"), None)
+    val schema = bundle.schema
+
+    println(asPrettyJson(schema, _objectMapper))
+
+    assert(schema.at("/title").asText() == "My bundle")
+    assert(schema.at("/anyOf").asScala.map(_.at("/$ref").asText()).toList == javaTypes.map(bundle.rootRefs))
+    assert(bundle.getRootRefs.get(javaTypes.head) == "#/definitions/PojoWithParent")
+    assert(bundle.rootRef(javaTypes.head) == Some("#/definitions/PojoWithParent"))
+    assert(bundle.rootRef(_objectMapper.constructType(classOf[PojoWithArrays])).isEmpty)
+    // In the order the root-types were given
+    assert(bundle.rootRefs.keys.toList == javaTypes)
+    assert(bundle.getRootRefs.keySet().asScala.toList == javaTypes)
+
+    // Each definition is only found once
+    assert(schema.at("/definitions").fieldNames().asScala.toList.sorted == List("Child1", "Child2", "ManyPrimitives", "Parent", "PojoWithParent", "RecursivePojo"))
+
+    // A root-definition is the same as the root of the separate schema
+    val separate = jsonSchemaGenerator.generateJsonSchema(classOf[PojoWithParent]).asInstanceOf[ObjectNode]
+    separate.remove(List("$schema", "title", "definitions").asJava)
+    assert(schema.at("/definitions/PojoWithParent") == separate)
+    assert(schema.at("/definitions/Parent/oneOf").size() == 2)
+    assert(schema.at("/definitions/RecursivePojo/properties/children/items/$ref").asText() == "#/definitions/RecursivePojo")
+
+    useSchema(schema, Some(assertToFromJson(jsonSchemaGenerator, testData.pojoWithParent)))
+    useSchema(schema, Some(assertToFromJson(jsonSchemaGenerator, testData.child1, classOf[Parent])))
+    useSchema(schema, Some(assertToFromJson(jsonSchemaGenerator, testData.recursivePojo)))
+  }
+
+  test("Custom DefinitionNamingStrategy") {
+    val config = JsonSchemaConfig.vanillaJsonSchemaDraft4.withDefinitionNamingStrategy(new DefinitionNamingStrategy {
+      override def getDefinitionName(_type: JavaType, config: JsonSchemaConfig): String = "Def"
+    })
+    val g = new JsonSchemaGenerator(_objectMapper, debug = true, config)
+
+    val javaTypes = List(classOf[PojoWithParent], classOf[RecursivePojo], classOf[ManyPrimitives]).map(c => _objectMapper.constructType(c))
+    val bundle = g.generateJsonSchemaBundle(javaTypes)
+
+    // All definitions gets the same name, so they are made unique
+    assert(bundle.schema.at("/definitions").fieldNames().asScala.toList == List("Def", "Def_1", "Def_2", "Def_3", "Def_4"))
+    assert(javaTypes.map(bundle.rootRefs) == List("#/definitions/Def", "#/definitions/Def_3", "#/definitions/Def_4"))
+    assert(bundle.schema.at("/definitions/Def_3/properties/children/items/$ref").asText() == "#/definitions/Def_3")
+  }
+
+  test("Property annotations resolved once per generator") {
+    val objectUsingGroups = testData.classUsingValidationWithGroups
+    val g = new JsonSchemaGenerator(_objectMapperScala, debug = true, JsonSchemaConfig.vanillaJsonSchemaDraft4)
+    val g1 = new JsonSchemaGenerator(_objectMapperScala, debug = true,
+      JsonSchemaConfig.vanillaJsonSchemaDraft4.withJavaxValidationGroups(Array(classOf[ValidationGroup1])))
+
+    // Same result when the facts about the properties are reused
+    val schema = g.generateJsonSchema(objectUsingGroups.getClass)
+    assert(g.generateJsonSchema(objectUsingGroups.getClass) == schema)
+
+    // The facts are resolved for the validation-groups of each generator, even when sharing ObjectMapper
+    val schema1 = g1.generateJsonSchema(objectUsingGroups.getClass)
+    assertPropertyRequired(schema, "group1", required = false)
+    assertPropertyRequired(schema1, "group1", required = true)
+    assert(schema1 != schema)
+  }
+
+  test("WeakIdentityCache") {
+    val cache = new WeakIdentityCache[String, String]()
+    val key = new String("a")
+    assert(cache.getOrElseUpdate(key)("1") == "1")
+    assert(cache.getOrElseUpdate(key)("2") == "1")
+    // Equal keys are different entries
+    assert(cache.getOrElseUpdate(new String("a"))("3") == "3")
+
+    // Entries are dropped when their keys are garbage collected
+    val deadline = System.currentTimeMillis() + 10000
+    while (cache.size > 1 && System.currentTimeMillis() < deadline) {
+      System.gc()
+      Thread.sleep(10)
+    }
+    assert(cache.size == 1)
+    assert(cache.getOrElseUpdate(key)("4") == "1")
+  }
+
+  test("Reusing parsed @JsonSchemaInject") {
+    var calls = 0
+    val countingLoader = new Supplier[JsonNode] {
+      val loader = new CustomUserNamesLoader("xx")
+      override def get(): JsonNode = {
+        calls = calls + 1
+        loader.get()
+      }
+    }
+    val config = JsonSchemaConfig.vanillaJsonSchemaDraft4.copy(jsonSuppliers = Map("myCustomUserNamesLoader" -> countingLoader))
+
+    // Modifying the generated schema must not affect the next one
+    val g = new JsonSchemaGenerator(_objectMapperScala, debug = true, config)
+    val schema = g.generateJsonSchema(classOf[UsingJsonSchemaInject])
+    val expected = schema.deepCopy[JsonNode]()
+    schema.at("/properties/ib").asInstanceOf[ObjectNode].put("multipleOf", 8)
+    schema.at("/properties/uns2/items/enum").asInstanceOf[ArrayNode].removeAll()
+    assert(g.generateJsonSchema(classOf[UsingJsonSchemaInject]) == expected)
+    assert(calls == 2)
+
+    // Only calling the suppliers once
+    val memoizing = new JsonSchemaGenerator(_objectMapperScala, debug = true, config.withMemoizeJsonSupplierOutput(true))
+    assert(memoizing.generateJsonSchema(classOf[UsingJsonSchemaInject]) == expected)
+    memoizing.generateJsonSchema(classOf[UsingJsonSchemaInject]).at("/properties/uns2/items/enum").asInstanceOf[ArrayNode].removeAll()
+    assert(memoizing.generateJsonSchema(classOf[UsingJsonSchemaInject]) == expected)
+    assert(calls == 3)
+  }
+
+  test("SubclassesResolverImpl using SubtypeIndex") {
+    val resolver = SubclassesResolverImpl()
+      .withPackagesToScan(List("com.kjetland.jackson.jsonSchema.testData.polymorphism1", "com.kjetland.jackson.jsonSchema.testData.polymorphism6"))
+
+    assert(resolver.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+    assert(resolver.getSubclasses(classOf[Parent6]).toSet == Set(classOf[Child61], classOf[Child62]))
+    assert(resolver.getSubclasses(classOf[Child1]) == List())
+    // Only classes with subclasses are indexed
+    assert(resolver.subtypeIndex.size == 2)
+  }
+
+  test("SubclassesResolverImpl scanning in the background") {
+    val packages = List("com.kjetland.jackson.jsonSchema.testData.polymorphism1")
+
+    val resolver = SubclassesResolverImpl().withPackagesToScan(packages).startBackgroundScan()
+    val index = resolver.whenScanned.toCompletableFuture.get(60, TimeUnit.SECONDS)
+    assert(index.getSubtypeNames(classOf[Parent].getName).toSet == Set(classOf[Child1].getName, classOf[Child2].getName))
+    assert(resolver.scanDuration.isDefined)
+    assert(resolver.subtypeIndex eq index)
+
+    // Waits for the scan when it is still running
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      val resolver2 = SubclassesResolverImpl().withPackagesToScan(packages).startBackgroundScan(executor)
+      assert(resolver2.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+      assert(resolver2.scanDuration.isDefined)
+    } finally {
+      executor.shutdown()
+    }
+
+    // Not started - scanning using the calling thread
+    val resolver3 = SubclassesResolverImpl().withPackagesToScan(packages)
+    assert(resolver3.scanDuration.isEmpty)
+    assert(resolver3.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+    assert(resolver3.whenScanned.toCompletableFuture.isDone)
+
+    // A failed scan is done again by the next call needing the index
+    withTempDirectory("failing-scan") { dir =>
+      val cacheDirectory = new File(dir, "cache")
+      Files.write(cacheDirectory.toPath, Array[Byte]())
+      val resolver4 = SubclassesResolverImpl().withPackagesToScan(packages).withScanCacheDirectory(cacheDirectory)
+      val failed = resolver4.whenScanned
+      assertThrows[java.io.IOException](resolver4.subtypeIndex)
+      assert(failed.toCompletableFuture.isCompletedExceptionally)
+      assert(SubtypeIndexRegistry.refCount(resolver4.scanSpec.get) == 0)
+
+      Files.delete(cacheDirectory.toPath)
+      assert(resolver4.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+      assert(resolver4.whenScanned.toCompletableFuture.isDone)
+      resolver4.close()
+    }
+
+    // The executor rejects the scan - the next call needing the index scans instead of waiting forever
+    val resolver5 = SubclassesResolverImpl().withPackagesToScan(packages)
+    val rejected = resolver5.whenScanned
+    assertThrows[RejectedExecutionException](resolver5.startBackgroundScan(executor)) // Shut down
+    assert(rejected.toCompletableFuture.isCompletedExceptionally)
+    assert(resolver5.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+    resolver5.close()
+  }
+
+  test("SubclassesResolverImpl sharing scans with equal scanSpec") {
+    val resolver = SubclassesResolverImpl().withPackagesToScan(List("com.kjetland.jackson.jsonSchema.testData.polymorphism6"))
+    val spec = resolver.scanSpec.get
+    assert(SubtypeIndexRegistry.refCount(spec) == 0)
+
+    val resolver2 = resolver.copy()
+    assert(resolver.subtypeIndex eq resolver2.subtypeIndex)
+    assert(SubtypeIndexRegistry.refCount(spec) == 2)
+
+    // Another spec is scanned separately
+    val other = resolver.withClassesToScan(List(classOf[Parent6].getName))
+    assert(other.subtypeIndex ne resolver.subtypeIndex)
+    other.close()
+
+    // Resolvers for another ClassLoader (e.g. another tenant) scan separately
+    val tenant = resolver.withClassLoader(new URLClassLoader(Array(), getClass.getClassLoader))
+    assert(tenant.scanSpec != resolver.scanSpec)
+    assert(tenant.subtypeIndex ne resolver.subtypeIndex)
+    tenant.close()
+
+    resolver.close()
+    resolver.close()
+    assert(SubtypeIndexRegistry.refCount(spec) == 1)
+    resolver2.close()
+    assert(SubtypeIndexRegistry.refCount(spec) == 0)
+
+    // Still usable after close, but the next one scans again
+    assert(resolver.getSubclasses(classOf[Parent6]).toSet == Set(classOf[Child61], classOf[Child62]))
+    val resolver3 = resolver.copy()
+    assert(resolver3.subtypeIndex ne resolver.subtypeIndex)
+    resolver3.close()
+
+    // Closed before the background scan has acquired the index
+    var scan:Runnable = null
+    val resolver4 = resolver.copy().startBackgroundScan(new java.util.concurrent.Executor {
+      override def execute(command: Runnable): Unit = scan = command
+    })
+    resolver4.close()
+    scan.run()
+    assert(resolver4.getSubclasses(classOf[Parent6]).toSet == Set(classOf[Child61], classOf[Child62]))
+    assert(SubtypeIndexRegistry.refCount(spec) == 0)
+
+    // Not shared when using a custom ClassGraph
+    assert(resolver.withClassGraph(new ClassGraph()).scanSpec.isEmpty)
+  }
+
+  test("SubclassesResolverImpl with scan options") {
+    // Only directories - no jars
+    val resolver = SubclassesResolverImpl()
+      .withPackagesToScan(List("com.kjetland.jackson.jsonSchema.testData.polymorphism1"))
+      .withJarsToScan(List("no-such-jar-*.jar"))
+      .withJarsToReject(List("scala-library-*.jar"))
+      .withScanThreads(2)
+    assert(resolver.scanReport.isEmpty)
+    assert(resolver.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+
+    val report = resolver.scanReport.get
+    assert(report.classpathElements.nonEmpty)
+    assert(report.classpathElements.forall(_.isDirectory))
+    assert(report.classes >= 3)
+    assert(report.subtypeIndexSize == resolver.subtypeIndex.size)
+
+    // Jars are part of the scanSpec
+    assert(resolver.scanSpec != resolver.withJarsToScan(List()).scanSpec)
+    resolver.close()
+  }
+
+  test("ObjectMapperSubclassesResolver using registered subtypes") {
+    val objectMapper = new ObjectMapper()
+    objectMapper.registerSubtypes(classOf[Child21], classOf[Child22])
+
+    val failing = new SubclassesResolver {
+      override def getSubclasses(clazz: Class[_]): List[Class[_]] = throw new Exception("Should not be used")
+    }
+    val resolver = ObjectMapperSubclassesResolver(objectMapper).withFallback(failing)
+    assert(resolver.getSubclasses(classOf[Parent2]).toSet == Set(classOf[Child21], classOf[Child22]))
+
+    val g = new JsonSchemaGenerator(objectMapper, debug = true, JsonSchemaConfig.vanillaJsonSchemaDraft4.withSubclassesResolver(resolver))
+    assert(g.generateJsonSchema(classOf[Parent2]) == jsonSchemaGenerator.generateJsonSchema(classOf[Parent2]))
+
+    // Using META-INF/services
+    withTempDirectory("services") { servicesDirectory =>
+      val servicesFile = new java.io.File(servicesDirectory, "META-INF/services/" + classOf[Parent6].getName)
+      servicesFile.getParentFile.mkdirs()
+      Files.write(servicesFile.toPath, s"# Comment\n${classOf[Child61].getName}\n".getBytes("UTF-8"))
+      val classLoader = new URLClassLoader(Array(servicesDirectory.toURI.toURL), getClass.getClassLoader)
+
+      assert(resolver.withServiceLoader(classLoader).getSubclasses(classOf[Parent6]) == List(classOf[Child61]))
+      assert(ObjectMapperSubclassesResolver(objectMapper).getSubclasses(classOf[Parent6]) == List())
+    }
+  }
+
+  test("PrecompiledJsonSchemas") {
+    withTempDirectory("precompiled") { resourceDirectory =>
+
+      // The list written by the annotation-processor
+      val classList = new java.io.File(resourceDirectory, PrecompiledJsonSchemas.classListResourceName)
+      classList.getParentFile.mkdirs()
+      Files.write(classList.toPath, s"${classOf[PrecompiledPojo].getName}\n${classOf[PojoWithParent].getName}\ndoes.not.Exist\n".getBytes("UTF-8"))
+
+      val classLoader = new URLClassLoader(Array(resourceDirectory.toURI.toURL), getClass.getClassLoader)
+      val files = PrecompiledJsonSchemaWriter.write(resourceDirectory, classLoader, jsonSchemaGenerator)
+      assert(files.size == 2) // The index, and the class still annotated with @JsonSchemaPrecompile
+      assert(SchemaResources.readLines(files.head.toURI.toURL) == List("# config=vanillaJsonSchemaDraft4", classOf[PrecompiledPojo].getName))
+
+      val precompiled = new PrecompiledJsonSchemas(jsonSchemaGenerator, classLoader)
+      assert(precompiled.isPrecompiled(classOf[PrecompiledPojo]))
+      val schema = precompiled.generateJsonSchema(classOf[PrecompiledPojo])
+      assert(schema == jsonSchemaGenerator.generateJsonSchema(classOf[PrecompiledPojo]))
+      assert(schema.at("/title").asText() == "Precompiled")
+      assert(schema.at("/properties/email/format").asText() == "email")
+
+      // Served from the resource - not generated
+      Files.write(files(1).toPath, "{\"title\":\"From resource\"}".getBytes("UTF-8"))
+      val precompiled2 = new PrecompiledJsonSchemas(jsonSchemaGenerator, classLoader)
+      assert(precompiled2.generateJsonSchema(_objectMapper.constructType(classOf[PrecompiledPojo])).at("/title").asText() == "From resource")
+
+      // Falling back to the generator
+      assert(!precompiled.isPrecompiled(classOf[PojoWithParent]))
+      assert(precompiled.generateJsonSchema(classOf[PojoWithParent]) == jsonSchemaGenerator.generateJsonSchema(classOf[PojoWithParent]))
+
+      // Not used when generated using another preset than the generator's config
+      val html5Generator = new JsonSchemaGenerator(_objectMapper, JsonSchemaConfig.html5EnabledSchema)
+      val otherConfig = new PrecompiledJsonSchemas(html5Generator, classLoader)
+      assert(!otherConfig.isPrecompiled(classOf[PrecompiledPojo]))
+      assert(otherConfig.generateJsonSchema(classOf[PrecompiledPojo]) == html5Generator.generateJsonSchema(classOf[PrecompiledPojo]))
+
+      // Only the presets can be recorded
+      val customGenerator = new JsonSchemaGenerator(_objectMapper, JsonSchemaConfig.vanillaJsonSchemaDraft4.copy(autoGenerateTitleForProperties = true))
+      assertThrows[IllegalArgumentException](PrecompiledJsonSchemaWriter.write(resourceDirectory, List(classOf[PrecompiledPojo]), customGenerator))
+    }
+
+    // Using the preset and the ObjectMapper given to main
+    withTempDirectory("precompiled") { resourceDirectory =>
+      PrecompiledJsonSchemaWriter.main(Array(resourceDirectory.getPath, "--config", "html5EnabledSchema",
+        "--object-mapper", classOf[SnakeCaseObjectMapperFactory].getName, classOf[PojoWithParent].getName))
+      val classLoader = new URLClassLoader(Array(resourceDirectory.toURI.toURL), getClass.getClassLoader)
+      val precompiled = new PrecompiledJsonSchemas(new JsonSchemaGenerator(_objectMapper, JsonSchemaConfig.html5EnabledSchema), classLoader)
+      assert(precompiled.generateJsonSchema(classOf[PojoWithParent]).at("/properties/pojo_value").isObject)
+      assert(!new PrecompiledJsonSchemas(jsonSchemaGenerator, classLoader).isPrecompiled(classOf[PojoWithParent]))
+    }
+  }
+
+  test("JsonSchemaPrecompileProcessor") {
+    withTempDirectory("processor") { directory =>
+      val outputDirectory = new File(directory, "classes")
+      outputDirectory.mkdirs()
+
+      // Compiles the sources using the processor, into outputDirectory
+      def compile(sources:(String, String)*):Unit = {
+        val files = sources.toList.map {
+          case (className, source) =>
+            val file = new File(directory, "src/" + className.replace('.', '/') + ".java")
+            file.getParentFile.mkdirs()
+            Files.write(file.toPath, source.getBytes("UTF-8"))
+            file
+        }
+        val compiler = ToolProvider.getSystemJavaCompiler
+        val diagnostics = new DiagnosticCollector[JavaFileObject]()
+        val fileManager = compiler.getStandardFileManager(diagnostics, null, null)
+        try {
+          val annotationLocation = new File(classOf[JsonSchemaPrecompile].getProtectionDomain.getCodeSource.getLocation.toURI)
+          val classPath = List(annotationLocation.getPath, outputDirectory.getPath)
+          val options = List("-d", outputDirectory.getPath, "-classpath", classPath.mkString(File.pathSeparator))
+          val task = compiler.getTask(null, fileManager, diagnostics, options.asJava, null, fileManager.getJavaFileObjectsFromFiles(files.asJava))
+          task.setProcessors(List(new JsonSchemaPrecompileProcessor).asJava)
+          assert(task.call(), diagnostics.getDiagnostics.asScala.mkString("\n"))
+        } finally {
+          fileManager.close()
+        }
+      }
+
+      def classList():List[String] = {
+        val classLoader = new URLClassLoader(Array(outputDirectory.toURI.toURL), null)
+        PrecompiledJsonSchemas.listedClassNames(classLoader)
+      }
+
+      val annotation = classOf[JsonSchemaPrecompile].getName
+      compile(
+        "example.Pojo" -> s"package example; @$annotation public class Pojo { public String name; @$annotation public static class Nested {} }",
+        "example.NotAnnotated" -> "package example; public class NotAnnotated {}"
+      )
+      assert(classList() == List("example.Pojo", "example.Pojo$Nested"))
+
+      // Compiling incrementally keeps the classes already listed
+      compile("example.Other" -> s"package example; @$annotation public class Other {}")
+      assert(classList() == List("example.Other", "example.Pojo", "example.Pojo$Nested"))
+
+      // Nothing annotated - the list is left as is
+      compile("example.NotAnnotated" -> "package example; public class NotAnnotated { public int i; }")
+      assert(classList() == List("example.Other", "example.Pojo", "example.Pojo$Nested"))
+    }
+  }
+
+  test("JsonSchemaCatalog written at build-time") {
+    withTempDirectory("catalog") { resourceDirectory =>
+      val classes = JsonSchemaCatalogWriter.publicClasses(List("com.kjetland.jackson.jsonSchema.testData.polymorphism1"), getClass.getClassLoader)
+      // The abstract Parent is not included
+      assert(classes.toSet == Set(classOf[Child1], classOf[Child2]))
+      // Neither traits nor companion-objects
+      val scalaClasses = JsonSchemaCatalogWriter.publicClasses(List("com.kjetland.jackson.jsonSchema.testDataScala"), getClass.getClassLoader)
+      assert(scalaClasses.contains(classOf[Child1Scala]))
+      assert(!scalaClasses.contains(classOf[ParentScala]))
+      assert(!scalaClasses.exists(_.getName.endsWith("$")))
+      JsonSchemaCatalogWriter.write(resourceDirectory, classOf[PojoWithParent] :: classOf[Parent] :: classes, "html5EnabledSchema")
+
+      val catalog = JsonSchemaCatalog.load(new URLClassLoader(Array(resourceDirectory.toURI.toURL), null))
+      assert(catalog.classNames.size == 4)
+      assert(catalog.entries(classOf[Parent].getName).configName == "html5EnabledSchema")
+      assert(catalog.schema(classOf[Parent]).get == jsonSchemaGeneratorHTML5.generateJsonSchema(classOf[Parent]))
+      assert(catalog.schema(classOf[PojoWithParent]).get eq catalog.schema(classOf[PojoWithParent]).get)
+      val buffer = catalog.schemaBytes(classOf[Child1]).get
+      val bytes = new Array[Byte](buffer.remaining())
+      buffer.get(bytes)
+      assert(_objectMapper.readTree(bytes) == jsonSchemaGeneratorHTML5.generateJsonSchema(classOf[Child1]))
+
+      assert(!catalog.contains(classOf[ManyPrimitives]))
+      assert(catalog.schema(classOf[ManyPrimitives]).isEmpty)
+
+      assertThrows[IllegalArgumentException](JsonSchemaConfig.preset("noSuchPreset"))
+    }
+
+    // Plain case classes are generated using the Scala-module
+    withTempDirectory("catalog") { resourceDirectory =>
+      JsonSchemaCatalogWriter.write(resourceDirectory, List(classOf[ManyPrimitivesScala]), "vanillaJsonSchemaDraft4")
+      val catalog = JsonSchemaCatalog.load(new URLClassLoader(Array(resourceDirectory.toURI.toURL), null))
+      val schema = catalog.schema(classOf[ManyPrimitivesScala]).get
+      assert(schema == jsonSchemaGeneratorScala.generateJsonSchema(classOf[ManyPrimitivesScala]))
+      assert(schema.at("/properties").size() == 4)
+    }
+
+    // Using the application's ObjectMapper
+    withTempDirectory("catalog") { resourceDirectory =>
+      JsonSchemaCatalogWriter.main(Array(resourceDirectory.getPath, "--object-mapper", classOf[SnakeCaseObjectMapperFactory].getName, classOf[PojoWithParent].getName))
+      val catalog = JsonSchemaCatalog.load(new URLClassLoader(Array(resourceDirectory.toURI.toURL), null))
+      assert(catalog.schema(classOf[PojoWithParent]).get.at("/properties/pojo_value").isObject)
+    }
+  }
+
+  test("PersistentJsonSchemaCache") {
+    withTempDirectory("schemas") { directory =>
+      val resolver = SubclassesResolverImpl().withPackagesToScan(List("com.kjetland.jackson.jsonSchema.testData.polymorphism2"))
+      val config = JsonSchemaConfig.vanillaJsonSchemaDraft4.withSubclassesResolver(resolver)
+      val expected = new JsonSchemaGenerator(_objectMapper, debug = false, config)
+      def persisting(config:JsonSchemaConfig) = {
+        val cache = new PersistentJsonSchemaCache(directory)
+        (new JsonSchemaGenerator(_objectMapper, debug = false, config).withPersistentSchemaCache(cache), cache)
+      }
+
+      val (g, cache) = persisting(config)
+      assert(g.generateJsonSchema(classOf[PojoWithParent]) == expected.generateJsonSchema(classOf[PojoWithParent]))
+      assert(g.generateJsonSchema(classOf[Parent2]) == expected.generateJsonSchema(classOf[Parent2]))
+      assert(cache.stats == PersistentJsonSchemaCacheStats(0, 2, 0))
+      assert(directory.listFiles().length == 2)
+
+      // After a restart
+      val (g2, cache2) = persisting(config.copy())
+      assert(g2.generateJsonSchema(classOf[PojoWithParent]) == expected.generateJsonSchema(classOf[PojoWithParent]))
+      assert(g2.generateJsonSchema(classOf[Parent2]) == expected.generateJsonSchema(classOf[Parent2]))
+      assert(cache2.stats == PersistentJsonSchemaCacheStats(2, 0, 0))
+
+      // Another config - another key
+      val (g3, cache3) = persisting(config.withFailOnUnknownProperties(false))
+      g3.generateJsonSchema(classOf[PojoWithParent])
+      assert(cache3.stats == PersistentJsonSchemaCacheStats(0, 1, 0))
+
+      // Changed bytecode (simulated by changing the stored fingerprint)
+      val entryFile = directory.listFiles().find(f => new String(Files.readAllBytes(f.toPath), "UTF-8").contains(classOf[Child21].getName)).get
+      val entry = _objectMapper.readTree(entryFile).asInstanceOf[ObjectNode]
+      entry.get("classes").asInstanceOf[ObjectNode].put(classOf[Child21].getName, "changed")
+      _objectMapper.writeValue(entryFile, entry)
+
+      val (g4, cache4) = persisting(config)
+      assert(g4.generateJsonSchema(classOf[Parent2]) == expected.generateJsonSchema(classOf[Parent2]))
+      g4.generateJsonSchema(classOf[PojoWithParent])
+      assert(cache4.stats == PersistentJsonSchemaCacheStats(1, 0, 1))
+      assert(persisting(config)._1.generateJsonSchema(classOf[Parent2]) == expected.generateJsonSchema(classOf[Parent2]))
+
+      // Other subclasses found - the config (and key) is the same
+      var subclasses = List[Class[_]](classOf[Child21], classOf[Child22])
+      val changingResolver = new SubclassesResolver {
+        override def getSubclasses(clazz: Class[_]): List[Class[_]] = if (clazz == classOf[Parent2]) subclasses else List()
+      }
+      persisting(config.withSubclassesResolver(changingResolver))._1.generateJsonSchema(classOf[Parent2])
+      subclasses = List(classOf[Child21])
+      val (g5, cache5) = persisting(config.withSubclassesResolver(changingResolver))
+      g5.generateJsonSchema(classOf[Parent2])
+      assert(cache5.stats == PersistentJsonSchemaCacheStats(0, 0, 1))
+
+      // Validated once - later hits neither read the entry nor resolve the subclasses again
+      var resolved = 0
+      val countingResolver = new SubclassesResolver {
+        override def getSubclasses(clazz: Class[_]): List[Class[_]] = {
+          resolved = resolved + 1
+          resolver.getSubclasses(clazz)
+        }
+      }
+      val (g6, cache6) = persisting(config.withSubclassesResolver(countingResolver))
+      g6.generateJsonSchema(classOf[Parent2]) // Stored
+      g6.generateJsonSchema(classOf[Parent2]) // Validated
+      val resolvedWhenValidated = resolved
+      val schema6 = g6.generateJsonSchema(classOf[Parent2]).asInstanceOf[ObjectNode]
+      assert(resolved == resolvedWhenValidated)
+      assert(cache6.stats == PersistentJsonSchemaCacheStats(2, 1, 0))
+      schema6.put("title", "Modified by the caller")
+      assert(g6.generateJsonSchema(classOf[Parent2]) == expected.generateJsonSchema(classOf[Parent2]))
+      // Validated again when the entry is replaced
+      directory.listFiles().foreach(f => f.setLastModified(f.lastModified() + 10000))
+      g6.generateJsonSchema(classOf[Parent2])
+      assert(resolved > resolvedWhenValidated)
+
+      // A dependency only visible from a child-ClassLoader is fingerprinted the same way when storing and validating
+      withTempDirectory("classes") { classesDirectory =>
+        val source = new File(classesDirectory, "OnlyInChild.java")
+        Files.write(source.toPath, "public class OnlyInChild { public String name; }".getBytes("UTF-8"))
+        assert(ToolProvider.getSystemJavaCompiler.run(null, null, null, "-d", classesDirectory.getPath, source.getPath) == 0)
+        val child = new URLClassLoader(Array(classesDirectory.toURI.toURL), getClass.getClassLoader)
+        val onlyInChild = _objectMapper.constructType(child.loadClass("OnlyInChild"))
+
+        val cache7 = new PersistentJsonSchemaCache(new File(classesDirectory, "schemas"))
+        val dependencies = new SchemaDependencies(getClass.getClassLoader)
+        dependencies.recordType(_objectMapper.constructType(classOf[PojoWithParent]))
+        dependencies.recordType(onlyInChild)
+        cache7.put("key", _objectMapper.createObjectNode(), dependencies)
+        assert(cache7.get("key", getClass.getClassLoader, resolver).isDefined)
+        assert(cache7.stats == PersistentJsonSchemaCacheStats(1, 0, 0))
+      }
+
+      assert(PersistentJsonSchemaCache.configHash(config) == PersistentJsonSchemaCache.configHash(config.copy()))
+      assert(PersistentJsonSchemaCache.configHash(config) != PersistentJsonSchemaCache.configHash(JsonSchemaConfig.html5EnabledSchema))
+
+      // A class-file replaced by a hot-reload is read again
+      withTempDirectory("classes") { classesDirectory =>
+        val classFile = new File(classesDirectory, "Reloaded.class")
+        val loader = new URLClassLoader(Array(classesDirectory.toURI.toURL), null)
+        Files.write(classFile.toPath, Array[Byte](1))
+        val fingerprint = cache.fingerprint("Reloaded", List(loader))
+        assert(cache.fingerprint("Reloaded", List(loader)) == fingerprint)
+        Files.write(classFile.toPath, Array[Byte](1, 2))
+        assert(cache.fingerprint("Reloaded", List(loader)) != fingerprint)
+      }
+    }
+  }
+
+  test("JsonSchemaBinaryCatalog") {
+    withTempDirectory("catalog") { directory =>
+      val file = new File(directory, "catalog.bin")
+      val types = List(classOf[PojoWithParent], classOf[Parent], classOf[Child1], classOf[ManyPrimitives]).map(c => _objectMapper.constructType(c)) :+
+        _objectMapper.getTypeFactory.constructParametricType(classOf[GenericClass[_]], classOf[String])
+      JsonSchemaBinaryCatalogWriter.write(file, jsonSchemaGenerator, types)
+
+      val catalog = JsonSchemaBinaryCatalog.open(file)
+      assert(catalog.size == 5)
+      types.foreach {
+        t => assert(catalog.schema(t.getRawClass.getName).orElse(catalog.schema(t.toCanonical)).get == jsonSchemaGenerator.generateJsonSchema(t))
+      }
+
+      // By definition-name
+      assert(catalog.schema("PojoWithParent") == catalog.schema(classOf[PojoWithParent]))
+      assert(catalog.names.toSet.contains("Child1"))
+
+      val bytes = catalog.schemaBytes(classOf[Child1]).get
+      assert(bytes.isReadOnly)
+      val array = new Array[Byte](bytes.remaining())
+      bytes.get(array)
+      assert(_objectMapper.readTree(array) == jsonSchemaGenerator.generateJsonSchema(classOf[Child1]))
+
+      assert(!catalog.contains("does.not.Exist"))
+      assert(catalog.schema(classOf[PojoWithArrays]).isEmpty)
+
+      assertThrows[IllegalArgumentException](JsonSchemaBinaryCatalogWriter.write(file, List((List("a"), Array[Byte]()), (List("a"), Array[Byte]()))))
+      val notACatalog = new File(directory, "not-a-catalog.bin")
+      Files.write(notACatalog.toPath, Array[Byte]())
+      assertThrows[IllegalArgumentException](JsonSchemaBinaryCatalog.open(notACatalog))
+
+      // Corrupt catalogs
+      def catalogFile(ints:Int*):File = {
+        val f = new File(directory, "corrupt.bin")
+        val buffer = java.nio.ByteBuffer.allocate(ints.size * 4)
+        ints.foreach(buffer.putInt)
+        Files.write(f.toPath, buffer.array())
+        f
+      }
+      import JsonSchemaBinaryCatalog.{magic, version}
+      // A record outside the file
+      assertThrows[IllegalArgumentException](JsonSchemaBinaryCatalog.open(catalogFile(magic, version, 1, 1, 1000)))
+      // A slot-count which is not a power of two
+      assertThrows[IllegalArgumentException](JsonSchemaBinaryCatalog.open(catalogFile(magic, version, 0, 3, -1, -1, -1)))
+      // Data outside the file
+      assertThrows[IllegalArgumentException](JsonSchemaBinaryCatalog.open(catalogFile(magic, version, 1, 1, 20, 0, 28, 1000)))
+      // No empty slot - lookups of unknown names must still end
+      val full = JsonSchemaBinaryCatalog.open(catalogFile(magic, version, 1, 1, 20, 0, 28, 0))
+      assert(full.contains(""))
+      assert(!full.contains("a"))
+    }
+  }
+
+  test("JsonSchemaGenerationListener") {
+    val events = mutable.ListBuffer[String]()
+    val listener = new JsonSchemaGenerationListener {
+      override def rootStarted(javaType:JavaType):Unit = events += s"rootStarted ${javaType.getRawClass.getSimpleName}"
+      override def rootFinished(javaType:JavaType, schema:JsonNode, nanos:Long, selfNanos:Long):Unit = {
+        assert(nanos > 0)
+        assert(selfNanos >= 0 && selfNanos <= nanos)
+        if (javaType.getRawClass == classOf[PojoWithArrays]) assert(schema.has("definitions"))
+        events += s"rootFinished ${javaType.getRawClass.getSimpleName}"
+      }
+      override def rootFailed(javaType:JavaType, error:Throwable, nanos:Long):Unit = events += s"rootFailed ${javaType.getRawClass.getSimpleName}"
+      override def definitionCreated(javaType:JavaType, ref:String, nanos:Long, selfNanos:Long):Unit = {
+        assert(nanos > 0)
+        assert(selfNanos >= 0 && selfNanos <= nanos)
+        events += s"definitionCreated ${javaType.getRawClass.getSimpleName} $ref"
+      }
+      override def definitionReused(javaType:JavaType, ref:String):Unit = events += s"definitionReused ${javaType.getRawClass.getSimpleName} $ref"
+      override def subtypesResolved(javaType:JavaType, subtypes:List[Class[_]], nanos:Long):Unit = {
+        events += s"subtypesResolved ${javaType.getRawClass.getSimpleName} ${subtypes.map(_.getSimpleName).mkString(",")}"
+      }
+      override def injectApplied(javaType:JavaType, annotation:JsonSchemaInject, nanos:Long):Unit = events += s"injectApplied ${javaType.getRawClass.getSimpleName}"
+    }
+    val g = jsonSchemaGenerator.withGenerationListener(listener)
+
+    // Same schema as without the listener
+    assert(g.generateJsonSchema(classOf[PojoWithArrays]) == jsonSchemaGenerator.generateJsonSchema(classOf[PojoWithArrays]))
+    assert(events.head == "rootStarted PojoWithArrays")
+    assert(events.last == "rootFinished PojoWithArrays")
+    assert(events.contains("subtypesResolved Parent Child1,Child2"))
+    assert(events.count(_ == "definitionCreated Child1 #/definitions/Child1") == 1)
+    assert(events.contains("definitionReused Child1 #/definitions/Child1"))
+    assert(events.count(_ == "definitionCreated ClassNotExtendingAnything #/definitions/ClassNotExtendingAnything") == 1)
+    // Each definition is reported after the definitions it created
+    assert(events.indexOf("definitionCreated Child1 #/definitions/Child1") < events.indexOf("rootFinished PojoWithArrays"))
+
+    events.clear()
+    g.generateJsonSchema(classOf[ManyPrimitives])
+    assert(events.contains("injectApplied MyEnum"))
+
+    // The jsonSupplier used by UsingJsonSchemaInject is missing
+    val failing = new JsonSchemaGenerator(_objectMapperScala, debug = false, JsonSchemaConfig.vanillaJsonSchemaDraft4).withGenerationListener(listener)
+    def rootEvents = events.toList.filter(_.startsWith("root"))
+    events.clear()
+    intercept[Exception](failing.generateJsonSchema(classOf[UsingJsonSchemaInject]))
+    assert(rootEvents == List("rootStarted UsingJsonSchemaInject", "rootFailed UsingJsonSchemaInject"))
+    events.clear()
+    intercept[Exception](failing.writeJsonSchema(classOf[UsingJsonSchemaInject], new java.io.ByteArrayOutputStream()))
+    assert(rootEvents == List("rootStarted UsingJsonSchemaInject", "rootFailed UsingJsonSchemaInject"))
+    events.clear()
+    intercept[Exception](failing.generateJsonSchemaBundle(List(_objectMapperScala.constructType(classOf[UsingJsonSchemaInject]))))
+    assert(rootEvents == List("rootStarted UsingJsonSchemaInject", "rootFailed UsingJsonSchemaInject"))
+
+    val timings = new JsonSchemaGenerationTimings
+    jsonSchemaGenerator.withGenerationListener(timings).generateJsonSchema(classOf[PojoWithArrays])
+    assert(timings.timings.map(_.typeName).toSet == Set(classOf[PojoWithArrays], classOf[Child1], classOf[Child2], classOf[ClassNotExtendingAnything]).map(_.getName))
+    // The root includes all definitions, but not in its self-time
+    val root = timings.timings.find(_.typeName == classOf[PojoWithArrays].getName).get
+    assert(timings.timings.maxBy(_.totalNanos) == root)
+    assert(root.totalNanos - root.selfNanos >= timings.timings.filter(_ != root).map(_.totalNanos).max)
+    assert(timings.timings.map(_.selfNanos) == timings.timings.map(_.selfNanos).sorted.reverse)
+  }
+
+  test("JDK Flight Recorder events") {
+    assume(JsonSchemaJfr.available)
+    val recording = new Recording()
+    recording.enable("com.kjetland.jackson.jsonSchema.SchemaGeneration")
+    recording.enable("com.kjetland.jackson.jsonSchema.Definition")
+    recording.enable("com.kjetland.jackson.jsonSchema.Inject")
+    recording.enable("com.kjetland.jackson.jsonSchema.ClassGraphScan")
+    recording.start()
+
+    val timings = new JsonSchemaGenerationTimings
+    val g = jsonSchemaGenerator.withGenerationListener(timings).withJfrEvents()
+    val schema = g.generateJsonSchema(classOf[PojoWithArrays])
+    g.generateJsonSchema(classOf[ManyPrimitives])
+    // Not sharing the scan with other tests
+    val resolver = SubclassesResolverImpl().withPackagesToScan(List("com.kjetland.jackson.jsonSchema.testData.polymorphism5"))
+    resolver.getSubclasses(classOf[Parent5])
+    resolver.close()
+
+    recording.stop()
+    val file = Files.createTempFile("schema-generation", ".jfr")
+    val events = try {
+      recording.dump(file)
+      recording.close()
+      RecordingFile.readAllEvents(file).asScala.toList.groupBy(_.getEventType.getName)
+    } finally {
+      Files.delete(file)
+    }
+
+    val generation = events("com.kjetland.jackson.jsonSchema.SchemaGeneration").find(_.getString("typeName") == classOf[PojoWithArrays].getName).get
+    assert(generation.getInt("definitionsCreated") == 3)
+    assert(generation.getInt("definitionsReused") > 0)
+    def countNodes(node:JsonNode):Int = 1 + node.elements().asScala.map(countNodes).sum
+    assert(generation.getInt("nodeCount") == countNodes(schema))
+    assert(!generation.getDuration.isNegative)
+
+    val definitions = events("com.kjetland.jackson.jsonSchema.Definition").map(_.getString("ref")).toSet
+    assert(definitions == Set("#/definitions/Child1", "#/definitions/Child2", "#/definitions/ClassNotExtendingAnything"))
+    assert(events("com.kjetland.jackson.jsonSchema.Definition").forall(e => e.getLong("selfTime") <= e.getLong("buildTime")))
+    assert(events("com.kjetland.jackson.jsonSchema.Inject").exists(_.getString("typeName") == classOf[MyEnum].getName))
+    assert(events("com.kjetland.jackson.jsonSchema.ClassGraphScan").exists(_.getString("packages") == "com.kjetland.jackson.jsonSchema.testData.polymorphism5"))
+
+    // The existing listener is still notified
+    assert(timings.timings.nonEmpty)
+  }
+
+  test("SubclassesResolverImpl caching the scan on disk") {
+    withTempDirectory("scan-cache") {
+      cacheDirectory =>
+        withTempDirectory("classpath") {
+          classpathDirectory =>
+            // classpathDirectory is on the classpath - like e.g. the working-directory can be
+            val resolver = SubclassesResolverImpl()
+              .withPackagesToScan(List("com.kjetland.jackson.jsonSchema.testData.polymorphism1"))
+              .withScanCacheDirectory(cacheDirectory)
+              .withClassLoader(new URLClassLoader(Array(classpathDirectory.toURI.toURL), getClass.getClassLoader))
+
+            assert(resolver.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+            val cacheFiles = cacheDirectory.listFiles().toList
+            assert(cacheFiles.size == 1)
+
+            // Next time, the cached index is used instead of scanning - Only class-files and jars are part of the fingerprint
+            resolver.close()
+            val onlyChild1 = List(SubtypeIndex.header, s"${classOf[Parent].getName} ${classOf[Child1].getName}", SubtypeIndex.trailer)
+            Files.write(cacheFiles.head.toPath, onlyChild1.mkString("\n").getBytes("UTF-8"))
+            Files.write(new File(classpathDirectory, "other.txt").toPath, "changed".getBytes("UTF-8"))
+            val cached = resolver.copy()
+            assert(cached.getSubclasses(classOf[Parent]) == List(classOf[Child1]))
+            assert(cached.scanReport.isEmpty)
+            cached.close()
+
+            // A truncated or garbage index is deleted, and the classpath is scanned again
+            val complete = new String(Files.readAllBytes(cacheFiles.head.toPath), "UTF-8")
+            List(complete.take(complete.lastIndexOf(SubtypeIndex.trailer)), "garbage", "", SubtypeIndex.header + "\nno-subclasses\n" + SubtypeIndex.trailer).foreach {
+              content =>
+                Files.write(cacheFiles.head.toPath, content.getBytes("UTF-8"))
+                val scannedAgain = resolver.copy()
+                assert(scannedAgain.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+                assert(scannedAgain.scanReport.isDefined)
+                scannedAgain.close()
+                assert(new String(Files.readAllBytes(cacheFiles.head.toPath), "UTF-8") != content) // Written again
+            }
+
+            // Changed class-files gives another fingerprint
+            Files.write(new File(classpathDirectory, "Other.class").toPath, Array[Byte]())
+            val rescanned = resolver.copy()
+            assert(rescanned.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+            rescanned.close()
+            assert(cacheDirectory.listFiles().length == 2)
+
+            // Other packages gives another fingerprint
+            val resolver2 = resolver.withPackagesToScan(List("com.kjetland.jackson.jsonSchema.testData.polymorphism6"))
+            assert(resolver2.getSubclasses(classOf[Parent6]).toSet == Set(classOf[Child61], classOf[Child62]))
+            resolver2.close()
+            assert(cacheDirectory.listFiles().length == 3)
+        }
+    }
+  }
+
+  test("IndexedSubclassesResolver using index written at build-time") {
+    val packages = List("com.kjetland.jackson.jsonSchema.testData.polymorphism1", "com.kjetland.jackson.jsonSchema.testData.polymorphism6")
+    withTempDirectory("subtype-index") { resourceDirectory =>
+      val indexFile = SubtypeIndexWriter.write(resourceDirectory, packages)
+      assert(indexFile.getPath.endsWith(SubtypeIndex.resourceName))
+
+      val classLoader = new URLClassLoader(Array(resourceDirectory.toURI.toURL), null)
+      val noScanning = SubclassesResolverImpl().withClassesToScan(List("does.not.Exist"))
+      val resolver = IndexedSubclassesResolver(classLoader, fallback = noScanning)
+      assert(resolver.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+      assert(resolver.getSubclasses(classOf[Parent6]).toSet == Set(classOf[Child61], classOf[Child62]))
+
+      // Using the schema
+      val g = new JsonSchemaGenerator(_objectMapper, debug = true, JsonSchemaConfig.vanillaJsonSchemaDraft4.withSubclassesResolver(resolver))
+      assert(g.generateJsonSchema(classOf[Parent6]) == jsonSchemaGenerator.generateJsonSchema(classOf[Parent6]))
+
+      // Falling back to scanning when there is no index
+      val withoutIndex = IndexedSubclassesResolver(new URLClassLoader(Array(), null), SubclassesResolverImpl().withPackagesToScan(packages))
+      assert(withoutIndex.getSubclasses(classOf[Parent]).toSet == Set(classOf[Child1], classOf[Child2]))
+    }
+  }
+
+  test("SubclassesResolverImpl finding the subclasses of classes outside the scanned packages") {
+    // Parent7 and Parent7Interface are not scanned - only the package with their subclasses
+    val resolver = SubclassesResolverImpl().withPackagesToScan(List("com.kjetland.jackson.jsonSchema.testData.polymorphism7.children"))
+    assert(resolver.getSubclasses(classOf[Parent7]) == List(classOf[Child71], classOf[Child72]))
+    assert(resolver.getSubclasses(classOf[Parent7Interface]) == List(classOf[Child71], classOf[Child72]))
+    assert(resolver.getSubclasses(classOf[Child71]) == List(classOf[Child72]))
+    assert(resolver.getSubclasses(classOf[Child72]) == List())
+    assert(resolver.subtypeIndex.getSubtypeNames("java.lang.Object") == List())
+
+    val g = new JsonSchemaGenerator(_objectMapper, debug = true, JsonSchemaConfig.vanillaJsonSchemaDraft4.withSubclassesResolver(resolver))
+    val schema = g.generateJsonSchema(classOf[Parent7])
+    assert(schema.at("/oneOf").asScala.map(_.at("/$ref").asText()).toSet == Set("#/definitions/Child71", "#/definitions/Child72"))
+  }
+
+}
+
+// Used by JsonSchemaCatalogWriter.main
+class SnakeCaseObjectMapperFactory extends Supplier[ObjectMapper] {
+  override def get(): ObjectMapper = new ObjectMapper().setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
 }
 
 trait TestData {
@@ -0,0 +1,15 @@
+package com.kjetland.jackson.jsonSchema.testData;
+
+import com.kjetland.jackson.jsonSchema.annotations.JsonSchemaFormat;
+import com.kjetland.jackson.jsonSchema.annotations.JsonSchemaPrecompile;
+import com.kjetland.jackson.jsonSchema.annotations.JsonSchemaTitle;
+
+@JsonSchemaPrecompile
+@JsonSchemaTitle("Precompiled")
+public class PrecompiledPojo {
+
+    @JsonSchemaFormat("email")
+    public String email;
+
+    public ClassNotExtendingAnything child;
+}
@@ -0,0 +1,14 @@
+package com.kjetland.jackson.jsonSchema.testData.polymorphism7;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+// The subclasses are in another package - See the children-package
+@JsonTypeInfo(
+        use = JsonTypeInfo.Id.MINIMAL_CLASS,
+        include = JsonTypeInfo.As.PROPERTY,
+        property = "clazz")
+public abstract class Parent7 {
+
+    public String parentString;
+
+}
@@ -0,0 +1,5 @@
+package com.kjetland.jackson.jsonSchema.testData.polymorphism7;
+
+public interface Parent7Interface {
+
+}
@@ -0,0 +1,10 @@
+package com.kjetland.jackson.jsonSchema.testData.polymorphism7.children;
+
+import com.kjetland.jackson.jsonSchema.testData.polymorphism7.Parent7;
+import com.kjetland.jackson.jsonSchema.testData.polymorphism7.Parent7Interface;
+
+public class Child71 extends Parent7 implements Parent7Interface {
+
+    public String child1String;
+
+}
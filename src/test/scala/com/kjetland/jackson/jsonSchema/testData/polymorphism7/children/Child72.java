@@ -0,0 +1,7 @@
+package com.kjetland.jackson.jsonSchema.testData.polymorphism7.children;
+
+public class Child72 extends Child71 {
+
+    public Integer child2int;
+
+}